@@ -7,6 +7,8 @@ import com.elorankingbot.service.DBService;
 import com.elorankingbot.service.Services;
 import discord4j.core.GatewayDiscordClient;
 import discord4j.core.event.domain.Event;
+import discord4j.core.event.domain.guild.GuildCreateEvent;
+import discord4j.core.event.domain.guild.GuildDeleteEvent;
 import discord4j.core.event.domain.interaction.*;
 import discord4j.core.event.domain.lifecycle.ReadyEvent;
 import discord4j.core.event.domain.role.RoleDeleteEvent;
@@ -19,8 +21,10 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Hooks;
 
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @CommonsLog
 @Component
@@ -44,8 +48,17 @@ public class EventParser {
 					log.info(String.format("Logged in as %s", self.getTag()));
 					String activityMessage = services.props.getActivityMessage();
 					client.updatePresence(ClientPresence.of(Status.ONLINE, ClientActivity.playing(activityMessage))).subscribe();
+					saveGuildPresences(event);
 				});
 
+		// only a GuildDeleteEvent that is not an outage means the bot was removed from the guild
+		client.on(GuildCreateEvent.class)
+				.subscribe(event -> saveGuildPresence(event.getGuild().getId().asLong(), true));
+
+		client.on(GuildDeleteEvent.class)
+				.filter(event -> !event.isUnavailable())
+				.subscribe(event -> saveGuildPresence(event.getGuildId().asLong(), false));
+
 		client.on(ChatInputInteractionEvent.class)
 				.subscribe(this::createAndExecuteSlashCommand);
 
@@ -66,7 +79,7 @@ public class EventParser {
 					Server server = dbService.getOrCreateServer(event.getGuildId().asLong());
 					if (server.getAdminRoleId() == event.getRoleId().asLong()) {
 						server.setAdminRoleId(0L);
-						dbService.saveServer(server);
+						dbService.savePermissionRoleIds(server);
 					}
 				});
 
@@ -75,6 +88,25 @@ public class EventParser {
 		Hooks.onErrorDropped(throwable -> exceptionHandler.handleException(throwable, "Dropped Exception"));
 	}
 
+	private void saveGuildPresences(ReadyEvent event) {
+		try {
+			Set<Long> guildIds = event.getGuilds().stream()
+					.map(guild -> guild.getId().asLong())
+					.collect(Collectors.toSet());
+			dbService.saveGuildPresencesOfShard(guildIds, event.getShardInfo().getIndex(), event.getShardInfo().getCount());
+		} catch (Exception e) {
+			exceptionHandler.handleException(e, "EventParser::saveGuildPresences");
+		}
+	}
+
+	private void saveGuildPresence(long guildId, boolean isPresent) {
+		try {
+			dbService.saveGuildPresence(guildId, isPresent);
+		} catch (Exception e) {
+			exceptionHandler.handleException(e, String.format("EventParser::saveGuildPresence on %s", guildId));
+		}
+	}
+
 	private BiFunction<String, Boolean, Consumer<Throwable>> commandFailedCallbackFactory(long guildId) {
 		return (commandName, isDeploy) -> throwable -> log.error(String.format("failed to %s command %s on %s",
 				isDeploy ? "deploy" : "delete", commandName, guildId));
@@ -31,6 +31,7 @@ public abstract class Command {
 	protected final DiscordCommandManager discordCommandManager;
 	protected final MatchService matchService;
 	protected final QueueScheduler queueScheduler;
+	protected final LeaderboardRefreshScheduler leaderboardRefreshScheduler;
 	protected final TimedTaskScheduler timedTaskScheduler;
 	protected final ApplicationPropertiesLoader props;
 	protected final ExceptionHandler exceptionHandler;
@@ -51,6 +52,7 @@ public abstract class Command {
 		this.discordCommandManager = services.discordCommandManager;
 		this.matchService = services.matchService;
 		this.queueScheduler = services.queueScheduler;
+		this.leaderboardRefreshScheduler = services.leaderboardRefreshScheduler;
 		this.timedTaskScheduler = services.timedTaskScheduler;
 		this.props = services.props;
 		this.exceptionHandler = services.exceptionHandler;
@@ -97,11 +97,12 @@ public class CreateRanking extends SlashCommand {
 		Game game = new Game(server, nameOfGame, allowDraw, roleId);// TODO duplikate verhindern
 		server.addGame(game);
 		channelManager.getOrCreateResultChannel(game);
-		channelManager.refreshLeaderboard(game);
+		channelManager.createLeaderboardChannelAndMessage(game);
 		channelManager.getOrCreateMatchCategory(server);
 		channelManager.getOrCreateDisputeCategory(server);
 		channelManager.getOrCreateArchiveCategory(server);
 		dbService.saveServer(server);
+		leaderboardRefreshScheduler.requestRefresh(game);
 
 		String updatedCommands = discordCommandManager.updateGameCommands(server, exceptionHandler.updateCommandFailedCallbackFactory(event));
 
@@ -54,8 +54,9 @@ public class DeleteQueue extends SlashCommand {
 	protected void execute() {
 		String queueFullName = event.getOption("queue").get().getValue().get().asString();
 		Game game = server.getGame(queueFullName.split(" ")[0]);
-		game.deleteQueue(queueFullName.split(" ")[1]);
-		dbService.saveServer(server);
+		String queueName = queueFullName.split(" ")[1];
+		game.deleteQueue(queueName);
+		dbService.deleteQueue(game, queueName);
 		String updatedCommands = discordCommandManager.updateQueueCommands(server, exceptionHandler.updateCommandFailedCallbackFactory(event));
 
 		event.reply(String.format("Deleted queue %s. Updated or deleted these commands: %s" +
@@ -89,7 +89,7 @@ public class SetPermission extends SlashCommand {
             server.setModRoleId(role.getId().asLong());
         }
         String nameOfRole = role.getName();
-        dbService.saveServer(server);
+        dbService.savePermissionRoleIds(server);
 
         event.reply(String.format("Linked %s permissions to %s. This may take a minute to update on the server.",
                 adminOrMod, nameOfRole)).subscribe();
@@ -54,7 +54,7 @@ public class AutoLeaveModal extends ModalSubmitCommand {
         }
 
         server.setAutoLeaveQueuesAfter(maybeValueInMinutes.get());
-        dbService.saveServer(server);
+        dbService.saveAutoLeaveQueuesAfter(server);
         String newAutoLeaveQueuesAfterAsString = server.getAutoLeaveQueuesAfter() == 0 ?
                 "never"
                 : DurationParser.minutesToString(server.getAutoLeaveQueuesAfter());
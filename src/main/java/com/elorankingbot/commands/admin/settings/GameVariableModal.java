@@ -74,7 +74,7 @@ public class GameVariableModal extends ModalSubmitCommand {
 			dbService.saveServer(server);
 			if (variableName.equals("Name")) {
 				discordCommandManager.updateGameCommands(server, exceptionHandler.updateCommandFailedCallbackFactory(event));
-				channelManager.refreshLeaderboard(game);
+				leaderboardRefreshScheduler.requestRefresh(game);
 				channelManager.updateLeaderboardChannelName(game);
 			}
 			userFeedback = String.format("\n**Variable %s for ranking %s is now set to %s.**", variableName, gameName, value);
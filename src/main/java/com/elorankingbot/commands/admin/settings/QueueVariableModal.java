@@ -91,6 +91,7 @@ public class QueueVariableModal extends ModalSubmitCommand {
             userFeedback = String.format("\nError: %s -> %s: %s", variableName, value, maybeErrorMessage.get());
         } else {
             dbService.saveServer(server);
+            queueScheduler.markQueueDirty(queue);
             if (variableName.equals("Name")) {
                 discordCommandManager.updateQueueCommands(server, exceptionHandler.updateCommandFailedCallbackFactory(event));
             }
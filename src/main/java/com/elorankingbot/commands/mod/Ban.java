@@ -100,6 +100,7 @@ public class Ban extends SlashCommand {
 			case "permaban" -> {
 				sendPermabanMessages();
 				player.setUnbanAtTimeSlot(-1);
+				timedTaskScheduler.cancelTimedTasks(TimedTask.playerKey(guildId, player.getUserId()), TimedTask.TimedTaskType.PLAYER_UNBAN);
 				queueScheduler.removePlayerFromAllQueues(server, player);
 			}
 			case "duration" -> {
@@ -116,8 +117,8 @@ public class Ban extends SlashCommand {
 				duration = maybeDuration.get();
 				sendDurationBanMessages();
 				player.setUnbanAtTimeSlot((timedTaskScheduler.getCurrentIndex() + duration) % timedTaskScheduler.getNumberOfTimeSlots());
-				timedTaskScheduler.addTimedTask(TimedTask.TimedTaskType.PLAYER_UNBAN, duration,
-						guildId, player.getUserId(), null);
+				timedTaskScheduler.rescheduleTimedTask(TimedTask.TimedTaskType.PLAYER_UNBAN, duration,
+						guildId, player.getUserId(), player.getUnbanAtTimeSlot());
 				queueScheduler.removePlayerFromAllQueues(server, player);
 			}
 			case "unban" -> {
@@ -127,6 +128,7 @@ public class Ban extends SlashCommand {
 				}
 				sendUnbanMessages();
 				player.setUnbanAtTimeSlot(-2);
+				timedTaskScheduler.cancelTimedTasks(TimedTask.playerKey(guildId, player.getUserId()), TimedTask.TimedTaskType.PLAYER_UNBAN);
 			}
 		}
 		dbService.savePlayer(player);
@@ -2,7 +2,6 @@ package com.elorankingbot.commands.mod;
 
 import com.elorankingbot.commands.SlashCommand;
 import com.elorankingbot.model.*;
-import com.elorankingbot.service.MatchService;
 import com.elorankingbot.service.Services;
 import discord4j.core.event.domain.interaction.ChatInputInteractionEvent;
 import discord4j.core.object.entity.User;
@@ -47,9 +46,11 @@ public abstract class ForceMatch extends SlashCommand {
 		}
 
 		teams = makeTeams();
-		match = new Match(queue, teams);
+		match = new Match(queue, teams.stream()
+				.map(team -> team.stream().map(player -> PlayerReference.of(player, queue.getGame())).toList())
+				.toList());
 		doReports();
-		MatchResult matchResult = MatchService.generateMatchResult(match);
+		MatchResult matchResult = matchService.generateMatchResult(match);
 		String resolveMessage = String.format(String.format("%s has force-resolved a match of %s.",
 				event.getInteraction().getUser().getTag(), game.getName()));
 		EmbedCreateSpec matchEmbed = matchService.processForcedMatchResult(matchResult, users, resolveMessage, event, manageRoleFailedCallbackFactory());
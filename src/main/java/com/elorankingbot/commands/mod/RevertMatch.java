@@ -9,6 +9,7 @@ import com.elorankingbot.model.MatchResult;
 import com.elorankingbot.model.MatchResultReference;
 import com.elorankingbot.model.Player;
 import com.elorankingbot.model.PlayerGameStats;
+import com.elorankingbot.model.PlayerMatchResult;
 import com.elorankingbot.service.Services;
 import discord4j.core.event.domain.interaction.MessageInteractionEvent;
 import discord4j.discordjson.json.ApplicationCommandRequest;
@@ -16,6 +17,7 @@ import discord4j.discordjson.possible.Possible;
 import lombok.extern.apachecommons.CommonsLog;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.Optional;
 
 @ModCommand
@@ -73,25 +75,28 @@ public class RevertMatch extends MessageCommand {
 		}
 
 		matchResult.setReverted();
-		dbService.saveMatchResult(matchResult);
-		updatePlayers();
+		List<Player> players = dbService.findPlayers(matchResult.getPlayerIds());
+		updatePlayers(players);
+		dbService.write(dbService.newWriteBatch()
+				.saveMatchResult(matchResult)
+				.savePlayers(players)
+				.updateRankingsEntries(matchResult.getGame(), players));
 		updateMessages();
-		boolean leaderboardNeedsRefresh = dbService.updateRankingsEntries(matchResult);
-		if (leaderboardNeedsRefresh) channelManager.refreshLeaderboard(matchResult.getGame());
+		boolean leaderboardNeedsRefresh = dbService.hasLeaderboardChanged(matchResult);
+		if (leaderboardNeedsRefresh) leaderboardRefreshScheduler.requestRefresh(matchResult.getGame());
 		event.reply("Match reverted.").withEphemeral(true).subscribe();
 	}
 
-	private void updatePlayers() {
+	private void updatePlayers(List<Player> players) {
 		log.debug("RevertMatch::updatePlayers: " + matchResult.getId());
-		matchResult.getAllPlayerMatchResults().forEach(playerMatchResult -> {
-			Player player = playerMatchResult.getPlayer();
+		players.forEach(player -> {
+			PlayerMatchResult playerMatchResult = matchResult.getPlayerMatchResult(player.getId());
 			PlayerGameStats playerGameStats = player.getOrCreatePlayerGameStats(matchResult.getGame());
 			log.debug(String.format("Player %s W%s L%s D%s C%s", player.getTag(),
 					playerGameStats.getWins(), playerGameStats.getLosses(), playerGameStats.getDraws(), playerGameStats.getCancels()));
 			double ratingChange = playerMatchResult.getNewRating() - playerMatchResult.getOldRating();
 			playerGameStats.setRating(playerGameStats.getRating() - ratingChange);
 			playerGameStats.subtractResultStatus(playerMatchResult.getResultStatus());
-			dbService.savePlayer(player);
 			log.debug(String.format("Player %s W%s L%s D%s C%s", player.getTag(),
 					playerGameStats.getWins(), playerGameStats.getLosses(), playerGameStats.getDraws(), playerGameStats.getCancels()));
 		});
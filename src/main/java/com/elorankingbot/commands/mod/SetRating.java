@@ -111,12 +111,11 @@ public class SetRating extends SlashCommand {
 		playerGameStats.setRating(newRating);
 
 		queueScheduler.updatePlayerInAllQueuesOfGame(game, player);
-		matchService.updatePlayerMatches(game, player);
 		matchService.updatePlayerRank(game, player, manageRoleFailedCallbackFactory());
 		dbService.savePlayer(player);
-		dbService.updateRankingsEntry(game, player, newRating);
-		if (dbService.hasLeaderboardChanged(game, oldRating, newRating)) {
-			channelManager.refreshLeaderboard(game);
+		dbService.updateRankingsEntry(game, player);
+		if (dbService.hasLeaderboardChanged(game, player, newRating)) {
+			leaderboardRefreshScheduler.requestRefresh(game);
 		}
 
 		event.reply(String.format("%s's %srating is now set to %s.", player.getTag(),
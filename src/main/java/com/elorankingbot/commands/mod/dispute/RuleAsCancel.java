@@ -2,7 +2,6 @@ package com.elorankingbot.commands.mod.dispute;
 
 import com.elorankingbot.model.MatchResult;
 import com.elorankingbot.model.Player;
-import com.elorankingbot.service.MatchService;
 import com.elorankingbot.service.Services;
 import discord4j.common.util.Snowflake;
 import discord4j.core.event.domain.interaction.ButtonInteractionEvent;
@@ -34,7 +33,7 @@ public class RuleAsCancel extends RuleAsWinOrDraw {
 
 		acknowledgeEvent();
 		String reason = String.format("%s has ruled the match to be canceled.", moderatorTag);
-		MatchResult canceledMatchResult = MatchService.generateCanceledMatchResult(match);
+		MatchResult canceledMatchResult = matchService.generateCanceledMatchResult(match);
 		matchService.processMatchResult(canceledMatchResult, match, reason, manageRoleFailedCallbackFactory());
 		removeButtons();
 		postToDisputeChannel("**" + reason + "**").block();
@@ -4,7 +4,7 @@ import com.elorankingbot.commands.ButtonCommand;
 import com.elorankingbot.model.Match;
 import com.elorankingbot.model.MatchResult;
 import com.elorankingbot.model.Player;
-import com.elorankingbot.service.MatchService;
+import com.elorankingbot.model.PlayerReference;
 import com.elorankingbot.service.Services;
 import discord4j.common.util.Snowflake;
 import discord4j.core.event.domain.interaction.ButtonInteractionEvent;
@@ -51,16 +51,16 @@ public abstract class RuleAsWinOrDraw extends ButtonCommand {
 		acknowledgeEvent();
 		if (isRuleAsWin) {
 			for (int i = 0; i < match.getNumTeams(); i++) {
-				for (Player player : match.getTeams().get(i)) {
+				for (PlayerReference player : match.getTeams().get(i)) {
 					match.reportAndSetConflictData(player.getId(), i == winningTeamIndex ? WIN : LOSE);
 				}
 			}
 		} else {
-			for (Player player : match.getPlayers()) {
+			for (PlayerReference player : match.getPlayers()) {
 				match.reportAndSetConflictData(player.getId(), DRAW);
 			}
 		}
-		MatchResult matchResult = MatchService.generateMatchResult(match);
+		MatchResult matchResult = matchService.generateMatchResult(match);
 
 		String rulingMessage = isRuleAsWin ?
 				String.format("**%s has ruled this match a %s %s for team #%s.**",
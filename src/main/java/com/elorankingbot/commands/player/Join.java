@@ -151,12 +151,10 @@ public class Join extends SlashCommand {
         users.add(activeUser);
 
 
-        Group group = new Group(
-                users.stream()
-                        .map(user -> dbService.getPlayerOrGenerateIfNotPresent(guildId, user))
-                        .collect(Collectors.toList()),
-                game);
-        for (Player player : group.getPlayers()) {
+        List<Player> players = users.stream()
+                .map(user -> dbService.getPlayerOrGenerateIfNotPresent(guildId, user))
+                .collect(Collectors.toList());
+        for (Player player : players) {
             for (Match match : dbService.findAllMatchesByPlayer(player)) {
                 long secondsPassed = (new Date().getTime() - match.getTimestamp().getTime()) / 1000;
                 if (secondsPassed < newMatchJoinTimeout) {
@@ -184,16 +182,15 @@ public class Join extends SlashCommand {
 
         // TODO group queue
 
-        queue.addGroup(group);
+        queueScheduler.addGroupToQueue(queue, new Group(players, game));
         Date now = new Date();
-        for (Player player : group.getPlayers()) {
+        for (Player player : players) {
             if (server.getAutoLeaveQueuesAfter() == Server.NEVER) break;
 
-            timedTaskScheduler.addTimedTask(LEAVE_QUEUES, server.getAutoLeaveQueuesAfter(), player.getUserId(), guildId, now);
+            timedTaskScheduler.rescheduleTimedTask(LEAVE_QUEUES, server.getAutoLeaveQueuesAfter(), player.getUserId(), guildId, now);
             player.setLastJoinedQueueAt(now);
             dbService.savePlayer(player);
         }
-        dbService.saveServer(server);
         event.createFollowup(String.format("Queue %s joined. Once the match starts, " +
                         "I will create a channel for the match, and ping all participants.", queue.getFullName()))
                 .withEphemeral(true).subscribe(NO_OP, asyncExceptionCallback());
@@ -5,7 +5,6 @@ import com.elorankingbot.command.annotations.PlayerCommand;
 import com.elorankingbot.commands.SlashCommand;
 import com.elorankingbot.components.EmbedBuilder;
 import com.elorankingbot.model.Game;
-import com.elorankingbot.model.MatchResult;
 import com.elorankingbot.model.Player;
 import com.elorankingbot.model.RankingsExcerpt;
 import com.elorankingbot.service.Services;
@@ -20,7 +19,6 @@ import discord4j.discordjson.json.ApplicationCommandRequest;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
 
 import static discord4j.core.object.command.ApplicationCommandOption.Type.USER;
 
@@ -28,6 +26,7 @@ import static discord4j.core.object.command.ApplicationCommandOption.Type.USER;
 @GlobalCommand
 public class PlayerInfo extends SlashCommand {
 
+	private static final int MATCH_HISTORY_LENGTH = 20;
 	private Player targetPlayer;
 	private boolean isSelfInfo;
 
@@ -86,7 +85,8 @@ public class PlayerInfo extends SlashCommand {
 			Game game = server.getGame(gameName);
 			RankingsExcerpt rankingsExcerpt = dbService.getRankingsExcerptForPlayer(game, targetPlayer);
 			embeds.add(EmbedBuilder.createRankingsEmbed(rankingsExcerpt));
-			embeds.add(EmbedBuilder.createMatchHistoryEmbed(targetPlayer, getMatchHistory(game)));
+			embeds.add(EmbedBuilder.createMatchHistoryEmbed(targetPlayer,
+					dbService.findMatchHistory(targetPlayer, game, 0, MATCH_HISTORY_LENGTH)));
 		}
 		String banString = createBanString();
 
@@ -113,10 +113,4 @@ public class PlayerInfo extends SlashCommand {
 		}
 		return banString;
 	}
-
-	private List<Optional<MatchResult>> getMatchHistory(Game game) {
-		List<UUID> fullMatchHistory = targetPlayer.getOrCreatePlayerGameStats(game).getMatchHistory();
-		List<UUID> recentMatchHistory = fullMatchHistory.subList(Math.max(0, fullMatchHistory.size() - 20), fullMatchHistory.size());
-		return recentMatchHistory.stream().map(dbService::findMatchResult).toList();
-	}
 }
@@ -15,7 +15,7 @@ public abstract class ButtonCommandRelatedToMatch extends ButtonCommand {
 	protected final long guildId;
 	protected final Game game;
 	protected final MatchFinderQueue queue;
-	protected final Match match;
+	protected Match match;
 	protected final User activeUser;
 	protected final long activeUserId;
 	protected final UUID activePlayerId;
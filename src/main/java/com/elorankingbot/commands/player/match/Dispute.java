@@ -20,8 +20,7 @@ public class Dispute extends ButtonCommandRelatedToMatch {
 		}
 
 		event.getInteraction().getMessage().get().edit().withComponents(none).subscribe();
-		match.setDispute(true);
-		dbService.saveMatch(match);
+		match = dbService.saveMatch(match, disputedMatch -> disputedMatch.setDispute(true));
 		matchChannel = (TextChannel) event.getInteraction().getChannel().block();
 		channelManager.moveToDisputes(server, matchChannel);
 		channelManager.createDisputeMessage(matchChannel, match, activeUser.getTag());
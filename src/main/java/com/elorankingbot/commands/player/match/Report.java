@@ -4,14 +4,15 @@ import com.elorankingbot.components.EmbedBuilder;
 import com.elorankingbot.model.Match;
 import com.elorankingbot.model.MatchResult;
 import com.elorankingbot.model.ReportStatus;
-import com.elorankingbot.service.MatchService;
 import com.elorankingbot.service.Services;
 import com.elorankingbot.timedtask.DurationParser;
 import discord4j.core.event.domain.interaction.ButtonInteractionEvent;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.elorankingbot.model.Match.ReportIntegrity.INCOMPLETE;
 import static com.elorankingbot.timedtask.TimedTask.TimedTaskType.MATCH_AUTO_RESOLVE;
 import static com.elorankingbot.timedtask.TimedTask.TimedTaskType.MATCH_WARN_MISSING_REPORTS;
 
@@ -40,28 +41,30 @@ public abstract class Report extends ButtonCommandRelatedToMatch {
 		}
 
 		acknowledgeEvent();
-		match.reportAndSetConflictData(activePlayerId, reportStatus);
+		// reports of the other players may be saved concurrently. the report is saved first, so that only one report
+		// completes the match
+		AtomicBoolean isFirstReport = new AtomicBoolean();
+		match = dbService.saveMatch(match, reportedMatch -> {
+			reportedMatch.reportAndSetConflictData(activePlayerId, reportStatus);
+			isFirstReport.set(reportedMatch.getReportIntegrity() == INCOMPLETE && !reportedMatch.isHasFirstReport());
+			if (isFirstReport.get()) reportedMatch.setHasFirstReport(true);
+		});
 		Match.ReportIntegrity reportIntegrity = match.getReportIntegrity();
 		switch (reportIntegrity) {
 			case INCOMPLETE -> {
 				processIncompleteReporting();
-				if (!match.isHasFirstReport()) {
-					timedTaskScheduler.addTimedTask(MATCH_WARN_MISSING_REPORTS, 50, 0L, 0L, match.getId());
-					timedTaskScheduler.addTimedTask(MATCH_AUTO_RESOLVE, 60, 0L, 0L, match.getId());
-					match.setHasFirstReport(true);
+				if (isFirstReport.get()) {
+					timedTaskScheduler.addTimedTask(MATCH_WARN_MISSING_REPORTS, 50, server.getGuildId(), 0L, match.getId());
+					timedTaskScheduler.addTimedTask(MATCH_AUTO_RESOLVE, 60, server.getGuildId(), 0L, match.getId());
 				}
-				dbService.saveMatch(match);
-			}
-			case CONFLICT -> {
-				processConflictingReporting();
-				dbService.saveMatch(match);
 			}
+			case CONFLICT -> processConflictingReporting();
 			case CANCEL -> {
-				MatchResult canceledMatchResult = MatchService.generateCanceledMatchResult(match);
+				MatchResult canceledMatchResult = matchService.generateCanceledMatchResult(match);
 				matchService.processMatchResult(canceledMatchResult, match, "The match has been canceled.", manageRoleFailedCallbackFactory());
 			}
 			case COMPLETE -> {
-				MatchResult matchResult = MatchService.generateMatchResult(match);
+				MatchResult matchResult = matchService.generateMatchResult(match);
 				String resolveMessage = "The match has been resolved. Below are your new ratings and the rating changes.";
 				matchService.processMatchResult(matchResult, match, resolveMessage, manageRoleFailedCallbackFactory());
 			}
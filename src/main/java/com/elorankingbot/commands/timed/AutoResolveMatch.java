@@ -3,7 +3,7 @@ package com.elorankingbot.commands.timed;
 import com.elorankingbot.components.EmbedBuilder;
 import com.elorankingbot.model.Match;
 import com.elorankingbot.model.MatchResult;
-import com.elorankingbot.model.Player;
+import com.elorankingbot.model.PlayerReference;
 import com.elorankingbot.service.*;
 import com.elorankingbot.timedtask.DurationParser;
 import discord4j.core.object.entity.channel.TextChannel;
@@ -49,7 +49,7 @@ public class AutoResolveMatch {
 		String autoresolveMessage = "As 60 minutes have passed since the first report, I have auto-resolved the match.";// TODO
 		// if ReportIntegrity != CONFLICT, the possible states of the reporting are greatly reduced
 		if (match.getPlayerIdToReportStatus().containsValue(CANCEL)) {
-			MatchResult canceledMatchResult = MatchService.generateCanceledMatchResult(match);
+			MatchResult canceledMatchResult = matchService.generateCanceledMatchResult(match);
 			matchService.processMatchResult(canceledMatchResult, match, autoresolveMessage, role -> throwable -> {});
 			return;
 		} else if (match.getPlayerIdToReportStatus().containsValue(DRAW)) {
@@ -65,7 +65,7 @@ public class AutoResolveMatch {
 				}
 			});
 		} else {
-			List<List<Player>> teamsReportedLose = match.getTeams().stream()
+			List<List<PlayerReference>> teamsReportedLose = match.getTeams().stream()
 					.filter(team -> team.stream().anyMatch(player -> match.getReportStatus(player.getId()).equals(LOSE)))
 					.toList();
 			if (teamsReportedLose.size() == match.getTeams().size() - 1) {
@@ -79,13 +79,12 @@ public class AutoResolveMatch {
 				return;
 			}
 		}
-		MatchResult matchResult = MatchService.generateMatchResult(match);
+		MatchResult matchResult = matchService.generateMatchResult(match);
 		matchService.processMatchResult(matchResult, match, autoresolveMessage, role -> throwable -> {});
 	}
 
 	private void processDispute() {
-		match.setDispute(true);
-		dbService.saveMatch(match);
+		match = dbService.saveMatch(match, disputedMatch -> disputedMatch.setDispute(true));
 		matchChannel = (TextChannel) bot.getChannelById(match.getChannelId()).block();
 		disputeChannel = channelManager.createDisputeChannel(match).block();
 		sendDisputeLinkMessage();
@@ -22,9 +22,9 @@ public class EmbedBuilder {// TODO macht die klasse sinn? vllt eher thematisch s
 	public static EmbedCreateSpec createMatchEmbed(String title, Match match) {
 		MatchFinderQueue queue = match.getQueue();
 		List<String> embedTexts = new ArrayList<>();
-		for (List<Player> players : match.getTeams()) {
+		for (List<PlayerReference> players : match.getTeams()) {
 			StringBuilder embedText = new StringBuilder();
-			for (Player player : players) {
+			for (PlayerReference player : players) {
 				ReportStatus reportStatus = match.getReportStatus(player.getId());
 				String reportStatusIcon = " " + reportStatus.emoji.asUnicodeEmoji().get().getRaw();
 				if (match.getConflictingReports().contains(player)) {
@@ -32,7 +32,7 @@ public class EmbedBuilder {// TODO macht die klasse sinn? vllt eher thematisch s
 				}
 				embedText.append(String.format("%s (%s)%s\n",
 						player.getTag(),
-						formatRating(player.getOrCreatePlayerGameStats(queue.getGame()).getRating()),
+						formatRating(player.getRating()),
 						reportStatusIcon));
 			}
 			embedTexts.add(embedText.toString());
@@ -51,11 +51,10 @@ public class EmbedBuilder {// TODO macht die klasse sinn? vllt eher thematisch s
 		for (TeamMatchResult teamMatchResult : matchResult.getTeamMatchResults()) {
 			String embedText = "";
 			for (PlayerMatchResult playerMatchResult : teamMatchResult.getPlayerMatchResults()) {
-				Player player = playerMatchResult.getPlayer();
 				ReportStatus resultStatus = playerMatchResult.getResultStatus();
 				String resultStatusIcon = " " + resultStatus.emoji.asUnicodeEmoji().get().getRaw();
 				embedText += String.format("%s (%s%s)%s\n",
-						player.getTag(),
+						playerMatchResult.getPlayerTag(),
 						formatRating(playerMatchResult.getNewRating()),
 						", " + playerMatchResult.getRatingChangeAsString(),
 						resultStatusIcon);
@@ -78,9 +77,9 @@ public class EmbedBuilder {// TODO macht die klasse sinn? vllt eher thematisch s
 		boolean isCompletedMatch = matchResult != null;
 
 		List<String> embedTexts = new ArrayList<>();
-		for (List<Player> players : match.getTeams()) {
+		for (List<PlayerReference> players : match.getTeams()) {
 			String embedText = "";
-			for (Player player : players) {
+			for (PlayerReference player : players) {
 				ReportStatus reportStatus = match.getReportStatus(player.getId());
 				String reportStatusIcon = " " + reportStatus.emoji.asUnicodeEmoji().get().getRaw();
 				if (match.getConflictingReports().contains(player)) {
@@ -90,7 +89,7 @@ public class EmbedBuilder {// TODO macht die klasse sinn? vllt eher thematisch s
 						player.getTag(),
 						isCompletedMatch ?
 								formatRating(matchResult.getPlayerMatchResult(player.getId()).getNewRating())
-								: formatRating(player.getOrCreatePlayerGameStats(queue.getGame()).getRating()),
+								: formatRating(player.getRating()),
 						isCompletedMatch ?
 								", " + matchResult.getPlayerMatchResult(player.getId()).getRatingChangeAsString()
 								: "",
@@ -149,12 +148,13 @@ public class EmbedBuilder {// TODO macht die klasse sinn? vllt eher thematisch s
 		if (maybeMatchResult.isEmpty()) return "Match not found";
 
 		MatchResult matchResult = maybeMatchResult.get();
-		List<Player> ownTeam = matchResult.getTeamMatchResults().stream()
-				.filter(teamMatchResult -> teamMatchResult.getPlayers().contains(player))
-				.findAny().get().getPlayers().stream().filter(pl -> !pl.equals(player)).toList();
-		List<List<Player>> otherTeams = matchResult.getTeamMatchResults().stream()
-				.map(TeamMatchResult::getPlayers)
-				.filter(players -> !players.contains(player)).toList();
+		List<PlayerMatchResult> ownTeam = matchResult.getTeamMatchResults().stream()
+				.filter(teamMatchResult -> teamMatchResult.getPlayerIds().contains(player.getId()))
+				.findAny().get().getPlayerMatchResults().stream()
+				.filter(playerMatchResult -> !playerMatchResult.getPlayerId().equals(player.getId())).toList();
+		List<List<PlayerMatchResult>> otherTeams = matchResult.getTeamMatchResults().stream()
+				.filter(teamMatchResult -> !teamMatchResult.getPlayerIds().contains(player.getId()))
+				.map(TeamMatchResult::getPlayerMatchResults).toList();
 		String result = String.format("`%s` %s %s %s %s",
 				dateFormat.format(matchResult.getTimestamp()),
 				matchResult.getPlayerMatchResult(player.getId()).getResultStatus().asEmojiAsString(),
@@ -167,18 +167,18 @@ public class EmbedBuilder {// TODO macht die klasse sinn? vllt eher thematisch s
 		return result;
 	}
 
-	private static String createOwnTeamString(List<Player> team) {
+	private static String createOwnTeamString(List<PlayerMatchResult> team) {
 		if (team.isEmpty()) return "";
-		return "with " + String.join(", ", team.stream().map(Player::getTag).toList()) + ",";
+		return "with " + String.join(", ", team.stream().map(PlayerMatchResult::getPlayerTag).toList()) + ",";
 	}
 
-	private static String createSeveralTeamsString(List<List<Player>> teams) {
+	private static String createSeveralTeamsString(List<List<PlayerMatchResult>> teams) {
 		if (teams.size() == 1) return createOtherTeamString(teams.get(0));
 		return String.join(", ", teams.stream().map(team -> String.format("(%s)", createOtherTeamString(team))).toList());
 	}
 
-	private static String createOtherTeamString(List<Player> team) {
-		return String.join(", ", team.stream().map(Player::getTag).toList());
+	private static String createOtherTeamString(List<PlayerMatchResult> team) {
+		return String.join(", ", team.stream().map(PlayerMatchResult::getPlayerTag).toList());
 	}
 
 	private static int embedRankSpaces = 6;
@@ -28,6 +28,10 @@ public class ApplicationPropertiesLoader {
 	private long ente2Id;
 	private long announcementChannelId;
 	private int numberOfTimeSlots;
+	private int matchmakingThreads;
+	private int timedTaskThreads;
+	private int rankingsIndexMaxRankings;
+	private int serverCacheMaxSize;
 	private boolean useDevBotToken;
 	private boolean doRunSchedulers;
 	@Value("${spring.data.mongodb.database}")
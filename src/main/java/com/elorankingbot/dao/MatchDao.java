@@ -12,4 +12,5 @@ public interface MatchDao extends MongoRepository<Match, UUID> {
 	void deleteAllByServerAndGameId(Server server, String gameId);
 	void deleteAllByServer(Server server);
 	List<Match> findAllByServer(Server server);
+	List<Match> findAllByPlayerIds(UUID playerId);
 }
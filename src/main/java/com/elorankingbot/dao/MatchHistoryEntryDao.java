@@ -0,0 +1,15 @@
+package com.elorankingbot.dao;
+
+import com.elorankingbot.model.MatchHistoryEntry;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface MatchHistoryEntryDao extends MongoRepository<MatchHistoryEntry, UUID> {
+
+	List<MatchHistoryEntry> findAllByPlayerIdAndGameNameOrderByTimestampDesc(UUID playerId, String gameName, PageRequest pageRequest);
+	void deleteAllByGuildIdAndGameName(long guildId, String gameName);
+	void deleteAllByGuildId(long guildId);
+}
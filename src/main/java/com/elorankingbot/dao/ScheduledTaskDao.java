@@ -0,0 +1,9 @@
+package com.elorankingbot.dao;
+
+import com.elorankingbot.model.ScheduledTask;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.UUID;
+
+public interface ScheduledTaskDao extends MongoRepository<ScheduledTask, UUID> {
+}
@@ -1,7 +1,6 @@
 package com.elorankingbot.logging;
 
 import com.elorankingbot.model.MatchResult;
-import com.elorankingbot.model.Player;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import org.springframework.data.annotation.PersistenceConstructor;
@@ -27,7 +26,7 @@ public class BotStatsAccumulator {
 		long guildId = matchResult.getServer().getGuildId();
 		Integer numMatchesOrNull = serverIdToNumMatches.get(guildId);
 		serverIdToNumMatches.put(guildId, numMatchesOrNull == null ? 1 : numMatchesOrNull + 1);
-		playerIds.addAll(matchResult.getPlayers().stream().map(Player::getId).toList());
+		playerIds.addAll(matchResult.getPlayerIds());
 	}
 
 	public int getNumMatches() {
@@ -4,6 +4,8 @@ import lombok.Data;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.Date;
+
 @Data
 @Document(collection = "currentindex")
 public class CurrentIndex {
@@ -11,8 +13,10 @@ public class CurrentIndex {
 	@Id
 	private int id = 1;
 	private int value;
+	private Date savedAt;// null for indexes saved before this was added
 
-	public CurrentIndex(int value) {
+	public CurrentIndex(int value, Date savedAt) {
 		this.value = value;
+		this.savedAt = savedAt;
 	}
 }
@@ -3,44 +3,54 @@ package com.elorankingbot.model;
 import lombok.Data;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 @Data
 public class Group implements Comparable<Group> {
 
-	private List<Player> players;
+	private List<PlayerReference> players;
 	@DBRef(lazy = true)
 	private Game game;
 	private Date timestamp;
 
 	public Group(List<Player> players, Game game) {
-		this.players = players;
+		this.players = new ArrayList<>(players.stream().map(player -> PlayerReference.of(player, game)).toList());
 		this.game = game;
 		this.timestamp = new Date();
 	}
 
+	// orders by average rating, then by who joined first
 	@Override
 	public int compareTo(Group other) {
-		return (int) Math.ceil(this.getAverageRating() - other.getAverageRating());
+		int ratingComparison = Double.compare(this.getAverageRating(), other.getAverageRating());
+		return ratingComparison != 0 ? ratingComparison : this.timestamp.compareTo(other.timestamp);
 	}
 
 	public boolean hasPlayer(Player player) {
-		return players.contains(player);// Player::equals compares playerId
+		return players.stream().anyMatch(playerReference -> playerReference.references(player));
 	}
 
+	// only the rating snapshot can be outdated
 	public boolean updatePlayerIfPresent(Player player) {
-		if (hasPlayer(player)) {
-			players.set(players.indexOf(player), player);
-			return true;
-		} else {
-			return false;
+		for (PlayerReference playerReference : players) {
+			if (playerReference.references(player)) {
+				playerReference.setRating(player.getOrCreatePlayerGameStats(game).getRating());
+				return true;
+			}
 		}
+		return false;
+	}
+
+	public List<UUID> getPlayerIds() {
+		return players.stream().map(PlayerReference::getId).toList();
 	}
 
 	public double getAverageRating() {
 		double sumOfRatings = players.stream()
-				.map(player -> player.getOrCreatePlayerGameStats(game).getRating())
+				.map(PlayerReference::getRating)
 				.reduce(0D, Double::sum);
 		return sumOfRatings / players.size();
 	}
@@ -0,0 +1,20 @@
+package com.elorankingbot.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// whether the bot is in the guild, kept up to date from gateway events. see TimedTaskService::reconcileGuildPresence
+@Data
+@NoArgsConstructor
+@Document(collection = "guildpresence")
+public class GuildPresence {
+
+	@Id
+	private long guildId;
+	private boolean isPresent;
+	private Date changedAt;
+}
@@ -5,6 +5,8 @@ import lombok.Data;
 import lombok.extern.apachecommons.CommonsLog;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.PersistenceConstructor;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -33,15 +35,19 @@ public class Match {
 	private Server server;
 	private String gameId, queueId;
 	private boolean isDispute, hasFirstReport;
-	private List<List<Player>> teams;
+	private List<List<PlayerReference>> teams;
 	private Map<UUID, ReportStatus> playerIdToReportStatus;
+	@Indexed
+	private List<UUID> playerIds;// redundant, but map keys cannot be indexed
 	private long messageId, channelId;
-	private List<Player> conflictingReports;
+	private List<PlayerReference> conflictingReports;
 	private ReportIntegrity reportIntegrity;// TODO muss nicht persistiert werden, oder?
 	private Date timestamp;
+	@Version
+	private Long version;
 
 	// Match is constructed initially from queue, but persisted with server instead since queue has no collection
-	public Match(MatchFinderQueue queue, List<List<Player>> teams) {
+	public Match(MatchFinderQueue queue, List<List<PlayerReference>> teams) {
 		this.id = UUID.randomUUID();
 		this.server = queue.getGame().getServer();
 		this.gameId = queue.getGame().getName();
@@ -49,9 +55,10 @@ public class Match {
 		this.isDispute = false;
 		this.teams = teams;
 		this.playerIdToReportStatus = new HashMap<>(queue.getNumPlayersPerMatch());
-		for (Player player : this.teams.stream().flatMap(Collection::stream).toList()) {
+		for (PlayerReference player : this.teams.stream().flatMap(Collection::stream).toList()) {
 			this.playerIdToReportStatus.put(player.getId(), NOT_YET_REPORTED);
 		}
+		this.playerIds = new ArrayList<>(playerIdToReportStatus.keySet());
 		this.conflictingReports = new ArrayList<>();
 		this.reportIntegrity = INCOMPLETE;
 		this.timestamp = new Date();
@@ -70,10 +77,10 @@ public class Match {
 		List<ReportStatus> teamReports = new ArrayList<>(queue.getNumTeams());
 
 		// check for team internal conflicts
-		List<Player> teamInternalConflicts = new ArrayList<>(queue.getNumPlayersPerTeam());
-		for (List<Player> team : teams) {
+		List<PlayerReference> teamInternalConflicts = new ArrayList<>(queue.getNumPlayersPerTeam());
+		for (List<PlayerReference> team : teams) {
 			ReportStatus teamReported = null;
-			for (Player player : team) {
+			for (PlayerReference player : team) {
 				boolean teamInternalConflict = false;
 				ReportStatus playerReported = playerIdToReportStatus.get(player.getId());
 				if (playerReported != NOT_YET_REPORTED) {
@@ -93,15 +100,15 @@ public class Match {
 		}
 		if (teamInternalConflicts.size() > 0) {
 			conflictingReports = teamInternalConflicts;
-			log.trace("teamInternalConflicts = " + String.join(",", teamInternalConflicts.stream().map(Player::getTag).toList()));
+			log.trace("teamInternalConflicts = " + String.join(",", teamInternalConflicts.stream().map(PlayerReference::getTag).toList()));
 			return;
 		}
 
 		// check for conflicts involving draws and non-draws present at the same time; same for cancel
-		List<Player> playersReportedDraw = new ArrayList<>(getNumPlayers());
-		List<Player> playersReportedCancel = new ArrayList<>(getNumPlayers());
-		List<Player> playersReportedWinOrLoss = new ArrayList<>(getNumPlayers());
-		for (Player player : getPlayers()) {
+		List<PlayerReference> playersReportedDraw = new ArrayList<>(getNumPlayers());
+		List<PlayerReference> playersReportedCancel = new ArrayList<>(getNumPlayers());
+		List<PlayerReference> playersReportedWinOrLoss = new ArrayList<>(getNumPlayers());
+		for (PlayerReference player : getPlayers()) {
 			ReportStatus reportStatus = playerIdToReportStatus.get(player.getId());
 			if (reportStatus == DRAW) playersReportedDraw.add(player);
 			if (reportStatus == CANCEL) playersReportedCancel.add(player);
@@ -121,7 +128,7 @@ public class Match {
 				conflictingReports.addAll(playersReportedWinOrLoss);
 			}
 			log.trace("conflict involving draws or cancels = " + String.join(",",
-					conflictingReports.stream().map(Player::getTag).toList()));
+					conflictingReports.stream().map(PlayerReference::getTag).toList()));
 			return;
 		}
 		if (!playersReportedDraw.isEmpty() || !playersReportedCancel.isEmpty()) return;
@@ -142,7 +149,7 @@ public class Match {
 			conflictingReports = getPlayers();
 		}
 		log.trace(conflictingReports.isEmpty() ? "conflictingReports isEmpty"
-				: "conflictingReports = " + String.join(",", conflictingReports.stream().map(Player::getTag).toList()));
+				: "conflictingReports = " + String.join(",", conflictingReports.stream().map(PlayerReference::getTag).toList()));
 	}
 
 	private void setReportIntegrity() {
@@ -170,7 +177,7 @@ public class Match {
 		return getPlayers().size();
 	}
 
-	public List<Player> getPlayers() {
+	public List<PlayerReference> getPlayers() {
 		return this.getTeams().stream().flatMap(Collection::stream).collect(Collectors.toList());
 	}
 
@@ -178,17 +185,6 @@ public class Match {
 		return playerIdToReportStatus.containsKey(playerId);
 	}
 
-	public boolean updatePlayerIfPresent(Player player) {
-		boolean hasMatchChanged = false;
-		for (List<Player> team : teams) {
-			if (team.contains(player)) {
-				team.set(team.indexOf(player), player);
-				hasMatchChanged = true;
-			}
-		}
-		return hasMatchChanged;
-	}
-
 	public ReportStatus getReportStatus(UUID playerId) {
 		return playerIdToReportStatus.get(playerId);
 	}
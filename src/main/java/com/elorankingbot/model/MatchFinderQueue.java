@@ -6,6 +6,8 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 @Data
@@ -53,12 +55,40 @@ public class MatchFinderQueue {
 		this.isBuildMatchFromTopPlayer = true;
 	}
 
+	/* Solo queues keep their groups sorted by rating, so matchmaking never has to sort them. Premade queues keep them
+	in the order they joined, so premade teams are matched first come, first served.
+	All changes to the groups, including the rating snapshots that decide the order, are made while holding the lock
+	on the list, which is shared by all copies of the queue, see QueueRegistry. Readers iterate a snapshot. */
+	public Comparator<Group> groupOrder() {
+		return queueType == QueueType.PREMADE ? Comparator.comparing(Group::getTimestamp) : Comparator.naturalOrder();
+	}
+
 	public void addGroup(Group group) {
-		groups.add(group);
+		synchronized (groups) {
+			int index = Collections.binarySearch(groups, group, groupOrder());
+			groups.add(index < 0 ? -index - 1 : index, group);
+		}
+	}
+
+	public boolean removeGroupsContainingPlayer(Player player) {
+		synchronized (groups) {
+			return groups.removeIf(group -> group.hasPlayer(player));
+		}
 	}
 
-	public void removeGroupsContainingPlayer(Player player) {
-		groups.removeIf(group -> group.hasPlayer(player));
+	/* Removes the groups of the players of the match and returns them, or returns an empty list without removing
+	anything if one of the players has left the queue since the match was generated. */
+	public List<Group> removeGroupsOfMatch(Match match) {
+		synchronized (groups) {
+			List<Group> groupsOfMatch = groups.stream()
+					.filter(group -> group.getPlayerIds().stream().anyMatch(match::containsPlayer))
+					.toList();
+			int numPlayersInGroups = groupsOfMatch.stream().mapToInt(group -> group.getPlayers().size()).sum();
+			if (numPlayersInGroups != match.getPlayerIds().size()) return List.of();
+
+			groups.removeAll(groupsOfMatch);
+			return groupsOfMatch;
+		}
 	}
 
 	public int getNumPlayersWaiting() {
@@ -66,12 +96,16 @@ public class MatchFinderQueue {
 	}
 
 	public boolean updatePlayerIfPresent(Player player) {
-		boolean hasQueueChanged = false;
-		for (Group group : groups) {
-			boolean hasGroupChanged = group.updatePlayerIfPresent(player);
-			if (hasGroupChanged) hasQueueChanged = true;
+		synchronized (groups) {
+			boolean hasQueueChanged = false;
+			for (Group group : groups) {
+				boolean hasGroupChanged = group.updatePlayerIfPresent(player);
+				if (hasGroupChanged) hasQueueChanged = true;
+			}
+			// the rating of the player may have changed
+			if (hasQueueChanged) groups.sort(groupOrder());
+			return hasQueueChanged;
 		}
-		return hasQueueChanged;
 	}
 
 	public int getNumPlayersPerMatch() {
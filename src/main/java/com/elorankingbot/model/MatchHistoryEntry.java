@@ -0,0 +1,45 @@
+package com.elorankingbot.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.UUID;
+
+// one entry per player and match result, so Player documents do not grow with every match played
+@Data
+@NoArgsConstructor
+@Document(collection = "matchhistory")
+@CompoundIndex(def = "{'playerId': 1, 'gameName': 1, 'timestamp': -1}")
+@CompoundIndex(def = "{'guildId': 1, 'gameName': 1}")
+public class MatchHistoryEntry {
+
+	@Id
+	private UUID id;
+	private UUID playerId;
+	private long guildId;
+	private String gameName;
+	private UUID matchResultId;
+	private Date timestamp;
+
+	public MatchHistoryEntry(Player player, MatchResult matchResult) {
+		this(player.getId(), player.getGuildId(), matchResult.getGameName(), matchResult.getId(), matchResult.getTimestamp());
+	}
+
+	public MatchHistoryEntry(UUID playerId, long guildId, String gameName, UUID matchResultId, Date timestamp) {
+		this.id = generateId(playerId, matchResultId);
+		this.playerId = playerId;
+		this.guildId = guildId;
+		this.gameName = gameName;
+		this.matchResultId = matchResultId;
+		this.timestamp = timestamp;
+	}
+
+	// the same entry is never stored twice
+	public static UUID generateId(UUID playerId, UUID matchResultId) {
+		return UUID.nameUUIDFromBytes((playerId.toString() + matchResultId.toString()).getBytes());
+	}
+}
@@ -48,12 +48,12 @@ public class MatchResult implements Comparable<MatchResult> {
 	public PlayerMatchResult getPlayerMatchResult(UUID playerId) {
 		return teamMatchResults.stream()
 				.flatMap(teamMatchResult -> teamMatchResult.getPlayerMatchResults().stream())
-				.filter(playerMatchResult -> playerMatchResult.getPlayer().getId().equals(playerId)).findAny().get();
+				.filter(playerMatchResult -> playerMatchResult.getPlayerId().equals(playerId)).findAny().get();
 	}
 
 	public ReportStatus getResultStatus(Player player) {
 		return teamMatchResults.stream().flatMap(TeamMatchResult::stream)
-				.filter(playerMatchResult -> playerMatchResult.getPlayer().equals(player))
+				.filter(playerMatchResult -> playerMatchResult.getPlayerId().equals(player.getId()))
 				.map(PlayerMatchResult::getResultStatus).findAny().get();
 	}
 
@@ -61,9 +61,9 @@ public class MatchResult implements Comparable<MatchResult> {
 		return teamMatchResults.get(0).getResultStatus() == ReportStatus.CANCEL;
 	}
 
-	public List<Player> getPlayers() {
+	public List<UUID> getPlayerIds() {
 		return teamMatchResults.stream()
-				.flatMap(teamMatchResult -> teamMatchResult.getPlayers().stream())
+				.flatMap(teamMatchResult -> teamMatchResult.getPlayerIds().stream())
 				.collect(Collectors.toList());
 	}
 
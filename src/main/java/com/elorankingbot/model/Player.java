@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -31,6 +32,8 @@ public class Player  {
     private Date lastJoinedQueueAt;
     private int unbanAtTimeSlot;
     private Map<String, PlayerGameStats> gameNameToPlayerGameStats;
+    @Version
+    private Long version;
 
     public Player(long guildId, long userId, String tag) {
         this.id = generateId(guildId, userId);
@@ -77,7 +80,6 @@ public class Player  {
         PlayerMatchResult playerMatchResult = matchResult.getPlayerMatchResult(id);
         PlayerGameStats playerGameStats = gameNameToPlayerGameStats.get(matchResult.getGame().getName());
         playerGameStats.setRating(playerMatchResult.getNewRating());
-        playerGameStats.getMatchHistory().add(matchResult.getId());
         playerGameStats.addResultStatus(matchResult.getResultStatus(this));
     }
 }
@@ -2,7 +2,6 @@ package com.elorankingbot.model;
 
 import lombok.Data;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -12,8 +11,8 @@ public class PlayerGameStats implements Comparable<PlayerGameStats> {
 
 	private double rating;
 	private int wins, losses, draws, cancels;
-	private List<UUID> matchHistory;// TODO das hier vllt als referenz ablegen? das player-objekt wird ja immer groesser,
-	// die matchhistory wird aber nur manchmal gebraucht...
+	// only present in player documents persisted before MatchHistoryEntry existed, see DBService::moveMatchHistoriesOutOfPlayers
+	private List<UUID> matchHistory;
 
 	public PlayerGameStats(double rating) {
 		this.rating = rating;
@@ -21,7 +20,6 @@ public class PlayerGameStats implements Comparable<PlayerGameStats> {
 		this.draws = 0;
 		this.losses = 0;
 		this.cancels = 0;
-		this.matchHistory = new ArrayList<>();
 	}
 
 	public void addResultStatus(ReportStatus resultStatus) {
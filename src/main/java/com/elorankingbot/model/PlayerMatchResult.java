@@ -1,24 +1,42 @@
 package com.elorankingbot.model;
 
 import com.elorankingbot.FormatTools;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 
+import java.util.UUID;
+
 import static com.elorankingbot.FormatTools.formatRating;
 
 @Data
-@AllArgsConstructor
+@NoArgsConstructor
 public class PlayerMatchResult {
 
+	private UUID playerId;
+	// only present in match results that were persisted before playerId existed
+	@Getter(AccessLevel.NONE)
 	@DBRef(lazy = true)
 	private Player player;
-	// redundant
 	private String playerTag;
 	private ReportStatus resultStatus;
 	private double oldRating;
 	private double newRating;
 
+	public PlayerMatchResult(Player player, ReportStatus resultStatus, double oldRating, double newRating) {
+		this.playerId = player.getId();
+		this.playerTag = player.getTag();
+		this.resultStatus = resultStatus;
+		this.oldRating = oldRating;
+		this.newRating = newRating;
+	}
+
+	public UUID getPlayerId() {
+		return playerId != null ? playerId : player.getId();
+	}
+
 	public String getRatingChangeAsString() {
 		return FormatTools.formatRatingChange(newRating - oldRating);
 	}
@@ -0,0 +1,32 @@
+package com.elorankingbot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/* Stands in for a Player inside of groups and matches. Only what is needed to display and match players is kept;
+the rating is a snapshot for the game of the group or match. Anything else is looked up through DBService::findPlayers. */
+@Data
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlayerReference {
+
+	@EqualsAndHashCode.Include
+	private UUID id;
+	private long userId;
+	private String tag;
+	private double rating;
+
+	public static PlayerReference of(Player player, Game game) {
+		return new PlayerReference(player.getId(), player.getUserId(), player.getTag(),
+				player.getOrCreatePlayerGameStats(game).getRating());
+	}
+
+	public boolean references(Player player) {
+		return id.equals(player.getId());
+	}
+}
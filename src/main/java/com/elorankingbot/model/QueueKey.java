@@ -0,0 +1,13 @@
+package com.elorankingbot.model;
+
+// identifies a queue across reloads of its Server document
+public record QueueKey(
+		long guildId,
+		String gameName,
+		String queueName
+) {
+
+	public static QueueKey of(MatchFinderQueue queue) {
+		return new QueueKey(queue.getGame().getGuildId(), queue.getGame().getName().toLowerCase(), queue.getName().toLowerCase());
+	}
+}
@@ -13,7 +13,6 @@ import java.util.UUID;
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 @Document(collection = "rankingsentry")
 @CompoundIndex(def = "{'guildId': 1, 'gameName': 1, 'rating': -1}")
-@CompoundIndex(def = "{'guildId': 1, 'gameName': 1, 'playerTag': 1}")
 public class RankingsEntry implements Comparable<RankingsEntry> {
 
 	@Id
@@ -21,14 +20,16 @@ public class RankingsEntry implements Comparable<RankingsEntry> {
 	private UUID id;
 	private long guildId;
 	private String gameName;
+	private UUID playerId;
 	private double rating;
 	private String playerTag;
 	private int wins, draws, losses;
 
 	public RankingsEntry(Game game, Player player) {
-		this.id = UUID.randomUUID();
+		this.id = generateId(game.getGuildId(), game.getName(), player.getId());
 		this.guildId = game.getGuildId();
 		this.gameName = game.getName();
+		this.playerId = player.getId();
 		PlayerGameStats playerGameStats = player.getOrCreatePlayerGameStats(game);
 		this.rating = playerGameStats.getRating();
 		this.playerTag = player.getTag();
@@ -38,10 +39,11 @@ public class RankingsEntry implements Comparable<RankingsEntry> {
 	}
 
 	@PersistenceConstructor
-	public RankingsEntry(UUID id, long guildId, String gameName, double rating, String playerTag, int wins, int draws, int losses) {
+	public RankingsEntry(UUID id, long guildId, String gameName, UUID playerId, double rating, String playerTag, int wins, int draws, int losses) {
 		this.id = id;
 		this.guildId = guildId;
 		this.gameName = gameName;
+		this.playerId = playerId;
 		this.rating = rating;
 		this.playerTag = playerTag;
 		this.wins = wins;
@@ -49,6 +51,11 @@ public class RankingsEntry implements Comparable<RankingsEntry> {
 		this.losses = losses;
 	}
 
+	// a player has at most one entry per ranking, so entries can be upserted without looking them up first
+	public static UUID generateId(long guildId, String gameName, UUID playerId) {
+		return UUID.nameUUIDFromBytes(String.format("%s:%s:%s", guildId, gameName, playerId).getBytes());
+	}
+
 	@Override
 	public int compareTo(RankingsEntry other) {
 		return Double.compare(other.rating, this.rating);
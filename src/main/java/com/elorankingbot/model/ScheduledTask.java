@@ -0,0 +1,40 @@
+package com.elorankingbot.model;
+
+import com.elorankingbot.timedtask.TimedTask;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.UUID;
+
+// one document per pending timed task, so adding a task is a single insert. claimedUntil is set while the task runs
+@Data
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+@Document(collection = "scheduledtask")
+public class ScheduledTask {
+
+	@Id
+	@EqualsAndHashCode.Include
+	private UUID id;
+	private TimedTask task;
+	@Indexed
+	private Date dueAt;
+	private int attempt;// counts the runs that failed and were retried
+	private Date claimedUntil;
+
+	public ScheduledTask(TimedTask task, Date dueAt) {
+		this(task, dueAt, 0);
+	}
+
+	public ScheduledTask(TimedTask task, Date dueAt, int attempt) {
+		this.id = UUID.randomUUID();
+		this.task = task;
+		this.dueAt = dueAt;
+		this.attempt = attempt;
+	}
+}
@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.*;
@@ -26,6 +27,8 @@ public class Server {
     private int autoLeaveQueuesAfter;
     private Set<Long> patronIds;
     private PatreonClient.PatreonTier patreonTier;
+    @Version
+    private Long version;
 
     public static final int NEVER = 0;
 
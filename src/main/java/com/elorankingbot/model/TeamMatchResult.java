@@ -5,6 +5,7 @@ import lombok.Data;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -25,9 +26,9 @@ public class TeamMatchResult implements Comparable<TeamMatchResult> {
 		return thisValue.compareTo(otherValue);
 	}
 
-	public List<Player> getPlayers() {
+	public List<UUID> getPlayerIds() {
 		return playerMatchResults.stream()
-				.map(playerMatchResult -> playerMatchResult.getPlayer())
+				.map(PlayerMatchResult::getPlayerId)
 				.collect(Collectors.toList());
 	}
 
@@ -3,9 +3,9 @@ package com.elorankingbot.patreon;
 import com.elorankingbot.commands.Patreon;
 import com.elorankingbot.model.Server;
 import com.elorankingbot.patreon.model.PatreonDataGsonModel;
-import com.elorankingbot.service.ChannelManager;
 import com.elorankingbot.service.DBService;
 import com.elorankingbot.service.DiscordBotService;
+import com.elorankingbot.service.LeaderboardRefreshScheduler;
 import com.elorankingbot.service.Services;
 import com.google.gson.Gson;
 import lombok.Getter;
@@ -24,7 +24,7 @@ public class PatreonClient {
     private String clientId, clientSecret, redirectUri;
     private final DBService dbService;
     private final DiscordBotService bot;
-    private final ChannelManager channelManager;
+    private final LeaderboardRefreshScheduler leaderboardRefreshScheduler;
     @Getter
     private final int supporterMinPledgeInDollars;
     private final WebClient webClient;
@@ -43,7 +43,7 @@ public class PatreonClient {
         this.supporterMinPledgeInDollars = services.props.getPatreon().getSupporterMinPledgeInDollars();
         this.dbService = services.dbService;
         this.bot = services.bot;
-        this.channelManager = services.channelManager;
+        this.leaderboardRefreshScheduler = services.leaderboardRefreshScheduler;
         this.webClient = webClient;
         this.gson = new Gson();
     }
@@ -71,9 +71,9 @@ public class PatreonClient {
         patron.setPledgeInCents(pledgeInCents);
         dbService.savePatron(patron);
         server.getPatronIds().add(patron.getUserId());
-        dbService.saveServer(server);
+        dbService.addPatronId(server, patron.getUserId());
 
-        server.getGames().forEach(channelManager::refreshLeaderboard);
+        server.getGames().forEach(leaderboardRefreshScheduler::requestRefresh);
 
         return pledgeInCents;
     }
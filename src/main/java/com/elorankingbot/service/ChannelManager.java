@@ -25,6 +25,8 @@ import discord4j.rest.util.Permission;
 import discord4j.rest.util.PermissionSet;
 import lombok.extern.apachecommons.CommonsLog;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -63,67 +65,76 @@ public class ChannelManager {
 
 	// Result
 	public TextChannel getOrCreateResultChannel(Game game) {
-		try {
-			log.debug("getOrCreateResultChannel: " + game.getName());
-			return (TextChannel) bot.getChannelById(game.getResultChannelId()).block();
-		} catch (ClientException e) {
-			log.error("exception in getOrCreateResultChannel: " + e);
-			Guild guild = bot.getGuild(game.getGuildId()).block();
-			TextChannel resultChannel = guild.createTextChannel(String.format("%s match results", game.getName()))
-					.withPermissionOverwrites(onlyBotAndModAndAdminCanSend(game.getServer()))
-					.block();
-			game.setResultChannelId(resultChannel.getId().asLong());
-			dbService.saveServer(game.getServer());
-			return resultChannel;
-		}
+		return getOrCreateResultChannelMono(game).block();
+	}
+
+	public Mono<TextChannel> getOrCreateResultChannelMono(Game game) {
+		log.debug("getOrCreateResultChannel: " + game.getName());
+		return bot.getChannelById(game.getResultChannelId())
+				.cast(TextChannel.class)
+				.onErrorResume(ClientException.class, e -> {
+					log.error("exception in getOrCreateResultChannel: " + e);
+					return bot.getGuild(game.getGuildId())
+							.flatMap(guild -> guild.createTextChannel(String.format("%s match results", game.getName()))
+									.withPermissionOverwrites(onlyBotAndModAndAdminCanSend(game.getServer())))
+							.publishOn(Schedulers.boundedElastic())
+							.doOnNext(resultChannel -> {
+								game.setResultChannelId(resultChannel.getId().asLong());
+								dbService.saveResultChannelId(game);
+							});
+				});
 	}
 
-	public Message postToResultChannel(MatchResult matchResult) {
+	public Mono<Message> postToResultChannel(MatchResult matchResult) {
 		log.debug("postToResultChannel: " + matchResult.getId());
-		TextChannel resultChannel = getOrCreateResultChannel(matchResult.getGame());
-		log.debug("postToResultChannel id: " + resultChannel.getId().asString());
-		return resultChannel.createMessage(EmbedBuilder.createMatchResultEmbed(matchResult)).block();
+		return getOrCreateResultChannelMono(matchResult.getGame())
+				.flatMap(resultChannel -> resultChannel.createMessage(EmbedBuilder.createMatchResultEmbed(matchResult)));
 	}
 
 	// Match
 	public Category getOrCreateMatchCategory(Server server) {
-		try {
-			log.debug("getOrCreateMatchCategory " + server.getGuildId() + ":" + server.getMatchCategoryId());
-			return (Category) bot.getChannelById(server.getMatchCategoryId()).block();
-		} catch (ClientException e) {
-			log.warn("Exception in getOrCreateMatchCategory: " + e);
-			log.warn(e.getErrorResponse().get().toString());
-			if (!e.getErrorResponse().get().getFields().get("message").toString().equals("Unknown Channel")
-					// this happens when the category is deleted recently
-					&& !e.getErrorResponse().get().toString().contains("CHANNEL_PARENT_INVALID")) {
-				throw e;
-			}
-			Guild guild = bot.getGuild(server).block();
-			Category matchCategory = guild.createCategory("elo matches")
-					.withPermissionOverwrites(excludePublic(server))
-					.block();
-			server.setMatchCategoryId(matchCategory.getId().asLong());
-			dbService.saveServer(server);
-			return matchCategory;
-		}
+		return getOrCreateMatchCategoryMono(server).block();
+	}
+
+	public Mono<Category> getOrCreateMatchCategoryMono(Server server) {
+		log.debug("getOrCreateMatchCategory " + server.getGuildId() + ":" + server.getMatchCategoryId());
+		return bot.getChannelById(server.getMatchCategoryId())
+				.cast(Category.class)
+				.onErrorResume(ClientException.class, e -> {
+					log.warn("Exception in getOrCreateMatchCategory: " + e);
+					log.warn(e.getErrorResponse().get().toString());
+					if (!e.getErrorResponse().get().getFields().get("message").toString().equals("Unknown Channel")
+							// this happens when the category is deleted recently
+							&& !e.getErrorResponse().get().toString().contains("CHANNEL_PARENT_INVALID")) {
+						return Mono.error(e);
+					}
+					return bot.getGuild(server)
+							.flatMap(guild -> guild.createCategory("elo matches")
+									.withPermissionOverwrites(excludePublic(server)))
+							.publishOn(Schedulers.boundedElastic())
+							.doOnNext(matchCategory -> {
+								server.setMatchCategoryId(matchCategory.getId().asLong());
+								dbService.saveMatchCategoryId(server);
+							});
+				});
 	}
 
-	public TextChannelCreateMono createMatchChannel(Match match) {
+	public Mono<TextChannel> createMatchChannel(Match match) {
 		log.debug("createMatchChannel: " + match.getGameId() + ":" + match.getId());
 		Server server = match.getServer();
 		List<PermissionOverwrite> permissionOverwrites = excludePublic(server);
 		match.getPlayers().forEach(player -> permissionOverwrites.add(allowPlayerView(player)));
 		String channelName = createMatchChannelName(match.getTeams());
-		Category matchCategory = getOrCreateMatchCategory(server);
-		return bot.getGuild(match.getGame().getGuildId()).block()
-				.createTextChannel(channelName)
-				.withParentId(matchCategory.getId())
-				.withPermissionOverwrites(permissionOverwrites);
+		return Mono.zip(bot.getGuild(match.getGame().getGuildId()), getOrCreateMatchCategoryMono(server))
+				.flatMap(guildAndMatchCategory -> guildAndMatchCategory.getT1()
+						.createTextChannel(channelName)
+						.withParentId(guildAndMatchCategory.getT2().getId())
+						.withPermissionOverwrites(permissionOverwrites));
 	}
 
-	private String createMatchChannelName(List<List<Player>> teams) {
+	private String createMatchChannelName(List<List<PlayerReference>> teams) {
 		String tentativeString = String.join("-vs-", teams.stream()
-				.map(team -> String.join("-", team.stream().map(Player::getTag).toList())).toList());
+				.map(team -> String.join("-", team.stream().map(PlayerReference::getTag).toList())).toList());
 		if (tentativeString.length() <= 100) {
 			return tentativeString;
 		} else {
@@ -131,18 +142,28 @@ public class ChannelManager {
 		}
 	}
 
-	void sendMatchMessage(TextChannel channel, Match match) {
+	Mono<Message> sendMatchMessage(TextChannel channel, Match match) {
 		String title = String.format("Your match of %s is starting. " +
 						"I removed you from all other queues you joined on this server, if any. " +
 						"Please play the match and come back to report the result afterwards.",
 				match.getQueue().getFullName());
 		EmbedCreateSpec embedCreateSpec = EmbedBuilder.createMatchEmbed(title, match);
-		Message message = channel.createMessage(match.getAllMentions())
+		return channel.createMessage(match.getAllMentions())
 				.withEmbeds(embedCreateSpec)
-				.withComponents(createMatchActionRow(match)).block();
-		message.pin().subscribe();
-		match.setMessageId(message.getId().asLong());
-		match.setChannelId(message.getChannelId().asLong());
+				.withComponents(createMatchActionRow(match))
+				.doOnNext(message -> {
+					match.setMessageId(message.getId().asLong());
+					match.setChannelId(message.getChannelId().asLong());
+				});
+	}
+
+	Mono<Message> pinMessage(Message message) {
+		return message.pin()
+				.onErrorResume(throwable -> {
+					log.warn(String.format("Failed to pin message %s: %s", message.getId().asString(), throwable.getMessage()));
+					return Mono.empty();
+				})
+				.thenReturn(message);
 	}
 
 	private static ActionRow createMatchActionRow(Match match) {
@@ -178,7 +199,7 @@ public class ChannelManager {
 					.withPermissionOverwrites(excludePublic(server))
 					.block();
 			server.setDisputeCategoryId(disputeCategory.getId().asLong());
-			dbService.saveServer(server);
+			dbService.saveDisputeCategoryId(server);
 			return disputeCategory;
 		}
 	}
@@ -226,7 +247,8 @@ public class ChannelManager {
 	}
 
 	// Leaderboard
-	private Message createLeaderboardChannelAndMessage(Game game) {
+	// the message only says that the leaderboard is being created, LeaderboardRefreshScheduler fills it in
+	public Message createLeaderboardChannelAndMessage(Game game) {
 		log.debug("createLeaderBoardChannelAndMessage: " + game.getName());
 		Guild guild = bot.getGuild(game.getGuildId()).block();
 		TextChannel leaderboardChannel = guild.createTextChannel(String.format(leaderboardChannelNameTemplate, game.getName()))
@@ -238,7 +260,8 @@ public class ChannelManager {
 		return leaderboardMessage;
 	}
 
-	public void refreshLeaderboard(Game game) {
+	// reads the leaderboard right away, the returned Mono edits the message
+	public Mono<Message> editLeaderboard(Game game) {
 		Message leaderboardMessage;
 		try {
 			log.debug("refreshLeaderboard: " + game.getName());
@@ -247,17 +270,16 @@ public class ChannelManager {
 			log.error("Exception in refreshLeaderboard: " + game.getName() + " : " + e);
 			log.error(e.getErrorResponse().get().toString());
 			leaderboardMessage = createLeaderboardChannelAndMessage(game);
-			dbService.saveServer(game.getServer());// TODO is this necessary?
+			dbService.saveLeaderboardIds(game);
 		}
 		List<EmbedCreateSpec> embeds = new ArrayList<>();
 		if (game.getServer().getPatreonTier() == PatreonClient.PatreonTier.FREE) {
 			embeds.add(Components.begForPatreonEmbed(patreonCommandId));
 		}
 		embeds.add(EmbedBuilder.createRankingsEmbed(dbService.getLeaderboard(game)));
-		leaderboardMessage.edit()
+		return leaderboardMessage.edit()
 				.withContent(Possible.of(Optional.empty()))
-				.withEmbeds(embeds)
-				.subscribe();
+				.withEmbeds(embeds);
 	}
 
 	// Archive
@@ -273,7 +295,7 @@ public class ChannelManager {
 						.withPermissionOverwrites(excludePublic(server))
 						.block();
 				categoryIds.add(archiveCategory.getId().asLong());
-				dbService.saveServer(server);
+				dbService.addArchiveCategoryId(server, archiveCategory.getId().asLong());
 				break;
 			}
 			try {
@@ -287,7 +309,7 @@ public class ChannelManager {
 							.withPermissionOverwrites(excludePublic(server))
 							.block();
 					categoryIds.set(index, archiveCategory.getId().asLong());
-					dbService.saveServer(server);
+					dbService.saveArchiveCategoryId(server, index);
 					break;
 				} else {
 					throw e;
@@ -305,7 +327,7 @@ public class ChannelManager {
 		log.debug("moveToArchive: " + channel.getId().asString());
 		Category archiveCategory = getOrCreateArchiveCategory(server);
 		setParentCategory(channel, archiveCategory.getId().asLong()).subscribe();
-		timedTaskScheduler.addTimedTask(CHANNEL_DELETE, 60, channel.getId().asLong(), 0L, null);
+		timedTaskScheduler.addTimedTask(CHANNEL_DELETE, 60, channel.getId().asLong(), server.getGuildId(), null);
 		((TextChannel) channel).createMessage("**I have moved this channel to the archive. " +
 				"I will delete this channel in one hour.**").subscribe();
 	}
@@ -342,7 +364,7 @@ public class ChannelManager {
 				PermissionSet.none());
 	}
 
-	private static PermissionOverwrite allowPlayerView(Player player) {
+	private static PermissionOverwrite allowPlayerView(PlayerReference player) {
 		return PermissionOverwrite.forMember(Snowflake.of(player.getUserId()),
 				PermissionSet.of(Permission.VIEW_CHANNEL),
 				PermissionSet.none());
@@ -7,13 +7,37 @@ import com.elorankingbot.logging.BotStatsAccumulator;
 import com.elorankingbot.model.*;
 import com.elorankingbot.patreon.Patron;
 import com.elorankingbot.patreon.PatronDao;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import discord4j.core.object.entity.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import lombok.extern.apachecommons.CommonsLog;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @CommonsLog
@@ -24,6 +48,7 @@ public class DBService {
 	private final ServerDao serverDao;
 	private final MatchResultDao matchResultDao;
 	private final MatchResultReferenceDao matchResultReferenceDao;
+	private final MatchHistoryEntryDao matchHistoryEntryDao;
 	private final PlayerDao playerDao;
 	private final MatchDao matchDao;
 	private final RankingsEntryDao rankingsEntryDao;
@@ -31,17 +56,37 @@ public class DBService {
 	private final BotStatsDao botStatsDao;
 	private final PatronDao patronDao;
 	private final ApplicationPropertiesLoader props;
+	private final QueueRegistry queueRegistry;
+	private final RankingsIndex rankingsIndex;
+	private final LeaderboardChangeDetector leaderboardChangeDetector;
+	private final MongoTemplate mongoTemplate;
+	private static final String HAS_EMBEDDED_MATCH_HISTORY = "{$expr: {$anyElementTrue: [{$map: {" +
+			"input: {$objectToArray: {$ifNull: ['$gameNameToPlayerGameStats', {}]}}, in: {$isArray: '$$this.v.matchHistory'}}}]}}";
+	/* Resolves the player references of groups, matches and match results. Every write to players goes through here.
+	Like servers, each read gets its own copy, so concurrent match results and joins never change the same instance. */
+	private final Cache<UUID, org.bson.Document> playerDocuments = CacheBuilder.newBuilder().maximumSize(10000).recordStats().build();
+	private final DocumentCache<UUID, Player> playerCache;
+	/* Every command reads its server first. Each read gets its own copy, see DocumentCache. Only servers read through
+	findServer are cached, so the cache holds the guilds that are active. */
+	private final Cache<Long, org.bson.Document> serverDocuments;
+	private final DocumentCache<Long, Server> serverCache;
+	private static final int MAX_SAVE_ATTEMPTS = 5;
+	// guilds whose presence is already stored, so the GuildCreateEvents on every connect do not each write
+	private final Set<Long> knownPresentGuildIds = ConcurrentHashMap.newKeySet();
+	private final MeterRegistry meterRegistry;
 
 	@Autowired
 	public DBService(Services services,
 					 ServerDao serverDao, MatchResultDao matchResultDao,
-					 MatchResultReferenceDao matchResultReferenceDao, PlayerDao playerDao,
+					 MatchResultReferenceDao matchResultReferenceDao, MatchHistoryEntryDao matchHistoryEntryDao, PlayerDao playerDao,
 					 MatchDao matchDao, RankingsEntryDao rankingsEntryDao, BotStatsAccumulatorDao botStatsAccumulatorDao,
-					 BotStatsDao botStatsDao, PatronDao patronDao) {
+					 BotStatsDao botStatsDao, PatronDao patronDao, MongoTemplate mongoTemplate,
+					 LeaderboardChangeDetector leaderboardChangeDetector, MeterRegistry meterRegistry) {
 		this.bot = services.bot;
 		this.serverDao = serverDao;
 		this.matchResultDao = matchResultDao;
 		this.matchResultReferenceDao = matchResultReferenceDao;
+		this.matchHistoryEntryDao = matchHistoryEntryDao;
 		this.playerDao = playerDao;
 		this.matchDao = matchDao;
 		this.rankingsEntryDao = rankingsEntryDao;
@@ -49,11 +94,78 @@ public class DBService {
 		this.botStatsDao = botStatsDao;
 		this.patronDao = patronDao;
 		this.props = services.props;
+		this.queueRegistry = services.queueRegistry;
+		this.rankingsIndex = services.rankingsIndex;
+		this.mongoTemplate = mongoTemplate;
+		this.meterRegistry = meterRegistry;
+		GuavaCacheMetrics.monitor(meterRegistry, playerDocuments, "players");
+		this.playerCache = new DocumentCache<>(playerDocuments, mongoTemplate.getConverter(), Player.class, Set.of());
+		this.serverDocuments = CacheBuilder.newBuilder().maximumSize(props.getServerCacheMaxSize()).recordStats().build();
+		GuavaCacheMetrics.monitor(meterRegistry, serverDocuments, "servers");
+		this.serverCache = new DocumentCache<>(serverDocuments, mongoTemplate.getConverter(), Server.class, Set.of("groups"));
+		this.leaderboardChangeDetector = leaderboardChangeDetector;
+	}
+
+	// a document without a version would be inserted again on save, so documents from before versioning get version 0
+	@PostConstruct
+	public void addVersionsToOldDocuments() {
+		for (Class<?> versionedClass : List.of(Server.class, Match.class, Player.class)) {
+			long numUpdated = mongoTemplate.updateMulti(Query.query(Criteria.where("version").exists(false)),
+					new Update().set("version", 0L), versionedClass).getModifiedCount();
+			if (numUpdated > 0) {
+				log.info(String.format("Added versions to %s documents of %s", numUpdated, versionedClass.getSimpleName()));
+			}
+		}
+	}
+
+	/* Server, Match and Player are versioned, so a save fails when the document was saved elsewhere since it was read.
+	resolveConflict then prepares the document for another attempt, or returns false if the conflict cannot be resolved. */
+	private void saveWithRetry(String collection, Runnable save, Supplier<Boolean> resolveConflict) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				save.run();
+				return;
+			} catch (OptimisticLockingFailureException e) {
+				if (attempt == MAX_SAVE_ATTEMPTS || !resolveConflict.get()) throw e;
+				recordRetry(collection, e);
+			}
+		}
+	}
+
+	private void recordRetry(String collection, OptimisticLockingFailureException e) {
+		log.debug(String.format("Retrying save to %s after conflict: %s", collection, e.getMessage()));
+		Counter.builder("elorankingbot.db.save.retry").tag("collection", collection).register(meterRegistry).increment();
+	}
+
+	/* Servers and players are saved from copies, see DocumentCache. If the document was saved elsewhere since the copy
+	was read, the changes of the copy are applied to the stored document, which is saved instead. The save fails if
+	both changed the same value. Returns what was saved. A copy that was merged keeps the version it was read with, so
+	saving it again merges again instead of overwriting the other changes. */
+	private <K, T> T saveCopy(String collection, DocumentCache<K, T> cache, K id, T copy,
+							  Function<T, Long> getVersion, BiConsumer<T, Long> setVersion) {
+		Long readVersion = getVersion.apply(copy);
+		org.bson.Document copyDocument = cache.toDocument(copy);
+		T toSave = copy;
+		for (int attempt = 1; ; attempt++) {
+			try {
+				T saved = mongoTemplate.save(toSave);
+				cache.put(id, saved);
+				return saved;
+			} catch (OptimisticLockingFailureException e) {
+				// the version is raised before the write, whether it goes through or not
+				setVersion.accept(copy, readVersion);
+				Optional<T> maybeMerged = attempt == MAX_SAVE_ATTEMPTS ? Optional.empty()
+						: cache.merge(id, readVersion, copyDocument, mongoTemplate.findById(id, org.bson.Document.class, collection));
+				if (maybeMerged.isEmpty()) throw e;
+				recordRetry(collection, e);
+				toSave = maybeMerged.get();
+			}
+		}
 	}
 
 	public void resetAllPlayerRatings(Game game) {
 		log.debug(String.format("Resetting all player ratings for %s on %s", game.getName(), bot.getServerIdAndName(game.getServer())));
-		List<Player> players = playerDao.findAllByGuildId(game.getGuildId());
+		List<Player> players = findAllPlayersForServer(game.getServer());
 		players.forEach(player -> {
 			PlayerGameStats gameStats = player.getOrCreatePlayerGameStats(game);
 			gameStats.setRating(game.getInitialRating());
@@ -61,43 +173,226 @@ public class DBService {
 			gameStats.setLosses(0);
 			gameStats.setDraws(0);
 		});
-		playerDao.saveAll(players);
+		write(newWriteBatch().savePlayers(players));
 		rankingsEntryDao.deleteAllByGuildIdAndAndGameName(game.getGuildId(), game.getName());
+		rankingsIndex.forgetRanking(game);
+		leaderboardChangeDetector.forgetLeaderboard(game);
 	}
 
 	// Server
 	public Server getOrCreateServer(long guildId) {
-		Optional<Server> maybeServer = serverDao.findById(guildId);
+		Optional<Server> maybeServer = findServer(guildId);
 		if (maybeServer.isPresent()) {
 			Server server = maybeServer.get();
 			if (server.isMarkedForDeletion()) {
 				server.setMarkedForDeletion(false);
-				serverDao.save(server);
+				saveMarkedForDeletion(server);
 			}
 			return server;
 		} else {
 			Server newServer = new Server(guildId);
-			serverDao.save(newServer);
+			try {
+				serverDao.save(newServer);
+			} catch (DuplicateKeyException e) {
+				// created by another event of the same guild in the meantime
+				return findServer(guildId).orElseThrow(() -> e);
+			}
+			serverCache.put(guildId, newServer);
 			bot.sendToOwner("New server: " + guildId);
 			return newServer;
 		}
 	}
 
+	// returns a copy of the server that only the caller changes. changes are not seen by others until saved
+	public Optional<Server> findServer(long guildId) {
+		Optional<Server> maybeServer = serverCache.get(guildId);
+		if (maybeServer.isEmpty()) {
+			maybeServer = serverDao.findById(guildId);
+			maybeServer.ifPresent(server -> serverCache.put(guildId, server));
+		}
+		maybeServer.ifPresent(this::linkCopy);
+		return maybeServer;
+	}
+
+	// the copies of a server share the groups of their queues. the games refer to their copy instead of loading the server
+	private void linkCopy(Server server) {
+		queueRegistry.attach(server);
+		server.getGames().forEach(game -> {
+			game.setServer(server);
+			game.getQueues().forEach(queue -> queue.setGame(game));
+		});
+	}
+
 	public void saveServer(Server server) {
 		log.debug(String.format("Saving server %s", bot.getServerIdAndName(server)));
-		serverDao.save(server);
+		queueRegistry.attach(server);
+		Server savedServer = saveCopy("server", serverCache, server.getGuildId(), server, Server::getVersion, Server::setVersion);
+		queueRegistry.forgetQueuesMissingFrom(savedServer);
 	}
 
+	// for reading only. the servers are not cached, so a save of one of them that conflicts cannot be merged
 	public List<Server> findAllServers() {
-		return serverDao.findAll();
+		List<Server> servers = serverDao.findAll();
+		servers.forEach(this::linkCopy);
+		return servers;
+	}
+
+	/* The methods below only write the fields they name, instead of the whole server document with all its games and
+	queues. The game paths only match if the game is already in the database, a new game is written by saveServer.
+	They raise the version like a full save, so copies of the server read before are merged when saved, see saveCopy. */
+	private void updateServer(Server server, Update update) {
+		log.debug(String.format("Updating server %s: %s", bot.getServerIdAndName(server), update.getUpdateObject().toJson()));
+		update.inc("version", 1);
+		mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(server.getGuildId())), update, Server.class);
+		serverCache.invalidate(server.getGuildId());
+	}
+
+	private void updateGame(Game game, Function<String, Update> gamePathToUpdate) {
+		String gamePath = gamePath(game);
+		mongoTemplate.updateFirst(
+				Query.query(Criteria.where("_id").is(game.getGuildId()).and(gamePath).exists(true)),
+				gamePathToUpdate.apply(gamePath).inc("version", 1),
+				Server.class);
+		serverCache.invalidate(game.getGuildId());
+	}
+
+	private static String gamePath(Game game) {
+		return "gameNameToGame." + game.getName().toLowerCase();
+	}
+
+	public void saveMarkedForDeletion(Server server) {
+		updateServer(server, new Update().set("isMarkedForDeletion", server.isMarkedForDeletion()));
+	}
+
+	public void savePermissionRoleIds(Server server) {
+		updateServer(server, new Update()
+				.set("adminRoleId", server.getAdminRoleId())
+				.set("modRoleId", server.getModRoleId()));
+	}
+
+	public void saveMatchCategoryId(Server server) {
+		updateServer(server, new Update().set("matchCategoryId", server.getMatchCategoryId()));
+	}
+
+	public void saveDisputeCategoryId(Server server) {
+		updateServer(server, new Update().set("disputeCategoryId", server.getDisputeCategoryId()));
+	}
+
+	public void addArchiveCategoryId(Server server, long archiveCategoryId) {
+		updateServer(server, new Update().push("archiveCategoryIds", archiveCategoryId));
+	}
+
+	public void saveArchiveCategoryId(Server server, int index) {
+		updateServer(server, new Update().set("archiveCategoryIds." + index, server.getArchiveCategoryIds().get(index)));
+	}
+
+	public void saveAutoLeaveQueuesAfter(Server server) {
+		updateServer(server, new Update().set("autoLeaveQueuesAfter", server.getAutoLeaveQueuesAfter()));
+	}
+
+	public void addPatronId(Server server, long patronId) {
+		updateServer(server, new Update().addToSet("patronIds", patronId));
+	}
+
+	public void saveResultChannelId(Game game) {
+		updateGame(game, gamePath -> new Update().set(gamePath + ".resultChannelId", game.getResultChannelId()));
+	}
+
+	public void saveLeaderboardIds(Game game) {
+		updateGame(game, gamePath -> new Update()
+				.set(gamePath + ".leaderboardChannelId", game.getLeaderboardChannelId())
+				.set(gamePath + ".leaderboardMessageId", game.getLeaderboardMessageId()));
+	}
+
+	public void deleteQueue(Game game, String queueName) {
+		updateGame(game, gamePath -> new Update().unset(gamePath + ".queueNameToQueue." + queueName));
+		queueRegistry.forgetQueuesMissingFrom(game.getServer());
+	}
+
+	/* only writes the groups of a single queue, see QueueRegistry. this runs every few seconds for every active queue,
+	so the cached server is updated along instead of being read again */
+	public void saveQueueGroups(QueueKey queueKey, List<Group> groups) {
+		String queuePath = String.format("gameNameToGame.%s.queueNameToQueue.%s", queueKey.gameName(), queueKey.queueName());
+		Query query = Query.query(Criteria.where("_id").is(queueKey.guildId()).and(queuePath).exists(true));
+		query.fields().include("version");
+		org.bson.Document versionDocument = mongoTemplate.findAndModify(query,
+				new Update().set(queuePath + ".groups", groups).inc("version", 1),
+				FindAndModifyOptions.options().returnNew(true),
+				org.bson.Document.class, mongoTemplate.getCollectionName(Server.class));
+		if (versionDocument == null) return;
+
+		long version = versionDocument.get("version", Number.class).longValue();
+		serverCache.update(queueKey.guildId(), version - 1, version, server -> server.getGame(queueKey.gameName())
+				.getQueue(queueKey.queueName()).setGroups(groups));
 	}
 
 	public void deleteServerAndAssociatedData(Server server) {
 		playerDao.deleteAllByGuildId(server.getGuildId());
+		playerCache.invalidateIf(document -> ((Number) document.get("guildId")).longValue() == server.getGuildId());
 		matchDao.deleteAllByServer(server);
 		matchResultDao.deleteAllByServer(server);
+		matchHistoryEntryDao.deleteAllByGuildId(server.getGuildId());
 		rankingsEntryDao.deleteAllByGuildId(server.getGuildId());
+		rankingsIndex.forgetServer(server.getGuildId());
+		leaderboardChangeDetector.forgetServer(server.getGuildId());
 		serverDao.deleteById(server.getGuildId());
+		serverCache.invalidate(server.getGuildId());
+		queueRegistry.forgetServer(server.getGuildId());
+	}
+
+	// the server ids only, without reading the server documents
+	public Set<Long> findAllServerIds() {
+		return findIds(new Query(), Server.class);
+	}
+
+	public Set<Long> findServerIdsMarkedForDeletion() {
+		return findIds(Query.query(Criteria.where("isMarkedForDeletion").is(true)), Server.class);
+	}
+
+	private Set<Long> findIds(Query query, Class<?> documentClass) {
+		query.fields().include("_id");
+		return mongoTemplate.find(query, org.bson.Document.class, mongoTemplate.getCollectionName(documentClass)).stream()
+				.map(document -> ((Number) document.get("_id")).longValue())
+				.collect(Collectors.toSet());
+	}
+
+	public void saveMarkedForDeletion(Collection<Long> guildIds, boolean isMarkedForDeletion) {
+		if (guildIds.isEmpty()) return;
+
+		mongoTemplate.updateMulti(Query.query(Criteria.where("_id").in(guildIds)),
+				new Update().set("isMarkedForDeletion", isMarkedForDeletion).inc("version", 1), Server.class);
+		serverCache.invalidateAll(guildIds);
+	}
+
+	// GuildPresence
+	public void saveGuildPresence(long guildId, boolean isPresent) {
+		boolean isAlreadyPresent = isPresent ? !knownPresentGuildIds.add(guildId) : !knownPresentGuildIds.remove(guildId);
+		if (isPresent && isAlreadyPresent) return;
+
+		mongoTemplate.upsert(Query.query(Criteria.where("_id").is(guildId)),
+				new Update().set("isPresent", isPresent).set("changedAt", new Date()), GuildPresence.class);
+	}
+
+	/* The guilds of a shard as of connecting to Discord. Guilds the bot was removed from while it was offline send no
+	GuildDeleteEvent, so every guild of the shard that is not listed is absent. */
+	public void saveGuildPresencesOfShard(Set<Long> presentGuildIds, int shardIndex, int shardCount) {
+		Set<Long> absentGuildIds = findIds(Query.query(Criteria.where("isPresent").is(true)), GuildPresence.class).stream()
+				.filter(guildId -> (guildId >> 22) % shardCount == shardIndex)
+				.filter(guildId -> !presentGuildIds.contains(guildId))
+				.collect(Collectors.toSet());
+		Date now = new Date();
+		BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, GuildPresence.class);
+		presentGuildIds.forEach(guildId -> bulkOperations.upsert(Query.query(Criteria.where("_id").is(guildId)),
+				new Update().set("isPresent", true).set("changedAt", now)));
+		absentGuildIds.forEach(guildId -> bulkOperations.upsert(Query.query(Criteria.where("_id").is(guildId)),
+				new Update().set("isPresent", false).set("changedAt", now)));
+		if (!presentGuildIds.isEmpty() || !absentGuildIds.isEmpty()) bulkOperations.execute();
+		knownPresentGuildIds.addAll(presentGuildIds);
+		knownPresentGuildIds.removeAll(absentGuildIds);
+	}
+
+	public Set<Long> findPresentGuildIds() {
+		return findIds(Query.query(Criteria.where("isPresent").is(true)), GuildPresence.class);
 	}
 
 	// Match
@@ -113,15 +408,30 @@ public class DBService {
 		log.debug(String.format("Saving match %s on %s: %s",
 				match.getId(),
 				bot.getServerIdAndName(match.getServer()),
-				match.getPlayers().stream().map(Player::getTag).collect(Collectors.joining(","))));
+				match.getPlayers().stream().map(PlayerReference::getTag).collect(Collectors.joining(","))));
 		matchDao.save(match);
 	}
 
+	/* Applies change to the match and saves it. If the match was saved elsewhere in the meantime, change is applied
+	again to the stored match. Returns the match that was saved. */
+	public Match saveMatch(Match match, Consumer<Match> change) {
+		AtomicReference<Match> currentMatch = new AtomicReference<>(match);
+		change.accept(match);
+		saveWithRetry("match", () -> saveMatch(currentMatch.get()), () -> {
+			Optional<Match> maybeStoredMatch = matchDao.findById(match.getId());
+			if (maybeStoredMatch.isEmpty()) return false;
+			currentMatch.set(maybeStoredMatch.get());
+			change.accept(currentMatch.get());
+			return true;
+		});
+		return currentMatch.get();
+	}
+
 	public void deleteMatch(Match match) {
 		log.debug(String.format("Deleting match %s on %s: %s",
 				match.getId(),
 				bot.getServerIdAndName(match.getServer()),
-				match.getPlayers().stream().map(Player::getTag).collect(Collectors.joining(","))));
+				match.getPlayers().stream().map(PlayerReference::getTag).collect(Collectors.joining(","))));
 		matchDao.delete(match);
 	}
 
@@ -135,9 +445,21 @@ public class DBService {
 	}
 
 	public List<Match> findAllMatchesByPlayer(Player player) {
-		return findAllMatchesByServer(getOrCreateServer(player.getGuildId()))
-				.stream().filter(match -> match.containsPlayer(player.getId()))
-				.toList();
+		return matchDao.findAllByPlayerIds(player.getId());
+	}
+
+	// matches persisted before Match::playerIds existed are not found by findAllMatchesByPlayer otherwise
+	@EventListener(ApplicationReadyEvent.class)
+	public void addPlayerIdsToOldMatches() {
+		List<Match> matchesWithoutPlayerIds = mongoTemplate.find(
+				Query.query(Criteria.where("playerIds").exists(false)), Match.class);
+		for (Match match : matchesWithoutPlayerIds) {
+			mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(match.getId())),
+					new Update().set("playerIds", new ArrayList<>(match.getPlayerIdToReportStatus().keySet())), Match.class);
+		}
+		if (!matchesWithoutPlayerIds.isEmpty()) {
+			log.info(String.format("Added player ids to %s matches", matchesWithoutPlayerIds.size()));
+		}
 	}
 
 	// MatchResult
@@ -158,6 +480,44 @@ public class DBService {
 				game.getName(),
 				bot.getServerIdAndName(game.getServer())));
 		matchResultDao.deleteAllByServerAndGameName(game.getServer(), game.getName());
+		matchHistoryEntryDao.deleteAllByGuildIdAndGameName(game.getGuildId(), game.getName());
+	}
+
+	// MatchHistoryEntry
+	// pages count from the most recent match backwards, the matches of a page are returned oldest first
+	public List<Optional<MatchResult>> findMatchHistory(Player player, Game game, int page, int pageSize) {
+		List<UUID> matchResultIds = new ArrayList<>(matchHistoryEntryDao
+				.findAllByPlayerIdAndGameNameOrderByTimestampDesc(player.getId(), game.getName(), PageRequest.of(page, pageSize))
+				.stream().map(MatchHistoryEntry::getMatchResultId).toList());
+		Collections.reverse(matchResultIds);
+		Map<UUID, MatchResult> idToMatchResult = new HashMap<>();
+		matchResultDao.findAllById(matchResultIds).forEach(matchResult -> idToMatchResult.put(matchResult.getId(), matchResult));
+		return matchResultIds.stream().map(matchResultId -> Optional.ofNullable(idToMatchResult.get(matchResultId))).toList();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void moveMatchHistoriesOutOfPlayers() {
+		List<Player> playersWithMatchHistory = mongoTemplate.find(new BasicQuery(HAS_EMBEDDED_MATCH_HISTORY), Player.class);
+		for (Player player : playersWithMatchHistory) {
+			Update update = new Update();
+			player.getGameNameToPlayerGameStats().forEach((gameName, playerGameStats) -> {
+				if (playerGameStats.getMatchHistory() == null) return;
+
+				Query timestampsOnly = Query.query(Criteria.where("_id").in(playerGameStats.getMatchHistory()));
+				timestampsOnly.fields().include("timestamp");
+				// match results that no longer exist are dropped from the history
+				matchHistoryEntryDao.saveAll(mongoTemplate.find(timestampsOnly, MatchResult.class).stream()
+						.map(matchResult -> new MatchHistoryEntry(player.getId(), player.getGuildId(), gameName,
+								matchResult.getId(), matchResult.getTimestamp()))
+						.toList());
+				update.unset(String.format("gameNameToPlayerGameStats.%s.matchHistory", gameName));
+			});
+			mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(player.getId())), update, Player.class);
+			playerCache.invalidate(player.getId());
+		}
+		if (!playersWithMatchHistory.isEmpty()) {
+			log.info(String.format("Moved match histories of %s players out of the player documents", playersWithMatchHistory.size()));
+		}
 	}
 
 	// MatchResultReference
@@ -179,127 +539,204 @@ public class DBService {
 	// Player
 	public void savePlayer(Player player) {
 		log.debug(String.format("saving player %s on %s", player.getTag(), bot.getServerIdAndName(player)));
-		playerDao.save(player);
+		saveCopy("player", playerCache, player.getId(), player, Player::getVersion, Player::setVersion);
 	}
 
 	public void saveAllPlayers(List<Player> players) {
 		log.debug(String.format("Saving players %s on %s",
 				String.join(",", players.stream().map(Player::getTag).toList()),
 				players.isEmpty() ? "unknown" : bot.getServerIdAndName(players.get(0))));
-		playerDao.saveAll(players);
+		write(newWriteBatch().savePlayers(players));
+	}
+
+	// keeps the order of playerIds. players that do not exist anymore are left out
+	public List<Player> findPlayers(List<UUID> playerIds) {
+		Map<UUID, Player> playerIdToPlayer = playerCache.getAllPresent(playerIds);
+		List<UUID> missingPlayerIds = playerIds.stream().filter(playerId -> !playerIdToPlayer.containsKey(playerId)).toList();
+		if (!missingPlayerIds.isEmpty()) {
+			playerDao.findAllById(missingPlayerIds).forEach(player -> {
+				playerCache.put(player.getId(), player);
+				playerIdToPlayer.put(player.getId(), player);
+			});
+		}
+		return playerIds.stream().map(playerIdToPlayer::get).filter(Objects::nonNull).toList();
+	}
+
+	private Optional<Player> findPlayer(UUID playerId) {
+		Optional<Player> maybeCachedPlayer = playerCache.get(playerId);
+		if (maybeCachedPlayer.isPresent()) return maybeCachedPlayer;
+
+		Optional<Player> maybePlayer = playerDao.findById(playerId);
+		maybePlayer.ifPresent(player -> playerCache.put(playerId, player));
+		return maybePlayer;
 	}
 
 	public Optional<Player> findPlayerByGuildIdAndUserId(long guildId, long userId) {
-		return playerDao.findById(Player.generateId(guildId, userId));
+		return findPlayer(Player.generateId(guildId, userId));
 	}
 
 	public Player getPlayerOrGenerateIfNotPresent(long guildId, User user) {
-		Optional<Player> maybePlayer = playerDao.findById(Player.generateId(guildId, user.getId().asLong()));
+		Optional<Player> maybePlayer = findPlayer(Player.generateId(guildId, user.getId().asLong()));
 		if (maybePlayer.isPresent()) return maybePlayer.get();
 
 		Player player = new Player(guildId, user.getId().asLong(), user.getTag());
-		playerDao.save(player);
+		try {
+			playerDao.save(player);
+		} catch (DuplicateKeyException e) {
+			// the first two commands of a user ran at the same time, the other one created the player
+			return findPlayer(player.getId()).orElseThrow(() -> e);
+		}
+		playerCache.put(player.getId(), player);
 		return player;
 	}
 
 	public List<Player> findAllPlayersForServer(Server server) {
-		return playerDao.findAllByGuildId(server.getGuildId());
+		List<Player> players = playerDao.findAllByGuildId(server.getGuildId());
+		players.forEach(player -> playerCache.put(player.getId(), player));// so a save of the copy can be merged
+		return players;
 	}
 
 	// Rankings
 	public RankingsExcerpt getLeaderboard(Game game) {
-		// TODO nur ausschnitte abrufen, wahrscheinlich mit PagingAndSortingRepository?
-		List<RankingsEntry> allEntries = rankingsEntryDao.getAllByGuildIdAndAndGameName(game.getGuildId(), game.getName());
-		int numTotalPlayers = allEntries.size();
-		Collections.sort(allEntries);
-		return new RankingsExcerpt(game, allEntries.subList(0, Math.min(game.getLeaderboardLength(), allEntries.size())),
-				1, Optional.empty(), numTotalPlayers);
+		// only read to be displayed, see ChannelManager::refreshLeaderboard
+		RankingsExcerpt leaderboard = new RankingsExcerpt(game, rankingsIndex.getTopEntries(game, game.getLeaderboardLength()),
+				1, Optional.empty(), rankingsIndex.getNumEntries(game));
+		leaderboardChangeDetector.recordDisplayed(leaderboard);
+		return leaderboard;
 	}
 
 	public RankingsExcerpt getRankingsExcerptForPlayer(Game game, Player player) {
-		// TODO wie oben
-		List<RankingsEntry> allEntries = rankingsEntryDao.getAllByGuildIdAndAndGameName(game.getGuildId(), game.getName());
-		int numTotalPlayers = allEntries.size();
-		Collections.sort(allEntries);
-		Optional<Integer> maybePlayerRankingsEntryIndex = allEntries.stream()
-				.filter(rankingsEntry -> rankingsEntry.getPlayerTag().equals(player.getTag()))
-				.map(allEntries::indexOf).findAny();
-
-		List<RankingsEntry> entries;
-		int lowestIndex;
-		if (maybePlayerRankingsEntryIndex.isPresent()) {
-			int centerIndex = maybePlayerRankingsEntryIndex.get();
-			int excerptLength = 20;// TODO
-			lowestIndex = Math.max(0, centerIndex - excerptLength / 2);// TODO immer 20 zeigen, auch am rand
-			int highestIndex = Math.min(allEntries.size(), centerIndex + excerptLength / 2);
-			entries = allEntries.subList(lowestIndex, highestIndex);
-		} else {
-			entries = new ArrayList<>();
-			lowestIndex = -2;
+		int numTotalPlayers = rankingsIndex.getNumEntries(game);
+		int centerIndex = rankingsIndex.getRankIndex(game, player.getId());
+		if (centerIndex == -1) {
+			return new RankingsExcerpt(game, new ArrayList<>(), -1, Optional.of(player.getTag()), numTotalPlayers);
 		}
 
+		int excerptLength = 20;// TODO
+		int lowestIndex = Math.max(0, centerIndex - excerptLength / 2);// TODO immer 20 zeigen, auch am rand
+		List<RankingsEntry> entries = rankingsIndex.getEntries(game, lowestIndex, centerIndex + excerptLength / 2);
 		return new RankingsExcerpt(game, entries, lowestIndex + 1, Optional.of(player.getTag()), numTotalPlayers);
 	}
 
-	public boolean updateRankingsEntries(MatchResult matchResult) {
-		for (PlayerMatchResult playerMatchResult : matchResult.getAllPlayerMatchResults()) {
-			Optional<RankingsEntry> maybeRankingsEntry = rankingsEntryDao
-					.findByGuildIdAndGameNameAndPlayerTag(matchResult.getGame().getServer().getGuildId(),
-							matchResult.getGame().getName(), playerMatchResult.getPlayerTag());
-			maybeRankingsEntry.ifPresent(rankingsEntryDao::delete);
-			RankingsEntry newRankingsEntry = new RankingsEntry(matchResult.getGame(), playerMatchResult.getPlayer());
-			rankingsEntryDao.save(newRankingsEntry);
+	// entries persisted before RankingsEntry::playerId existed have random ids and are matched to players by tag
+	@EventListener(ApplicationReadyEvent.class)
+	public void keyOldRankingsEntriesByPlayer() {
+		List<RankingsEntry> oldEntries = mongoTemplate.find(
+				Query.query(Criteria.where("playerId").exists(false)), RankingsEntry.class);
+		if (oldEntries.isEmpty()) return;
+
+		// the old ids are random, so removing them and upserting the entries under their new ids do not overlap
+		BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RankingsEntry.class);
+		bulkOperations.remove(Query.query(Criteria.where("_id").in(oldEntries.stream().map(RankingsEntry::getId).toList())));
+		int numUnmatchedEntries = 0;
+		Map<Long, List<RankingsEntry>> guildIdToOldEntries = oldEntries.stream()
+				.collect(Collectors.groupingBy(RankingsEntry::getGuildId));
+		for (Map.Entry<Long, List<RankingsEntry>> guildIdAndOldEntries : guildIdToOldEntries.entrySet()) {
+			Map<String, UUID> playerTagToPlayerId = new HashMap<>();
+			playerDao.findAllByGuildId(guildIdAndOldEntries.getKey())
+					.forEach(player -> playerTagToPlayerId.put(player.getTag(), player.getId()));
+			for (RankingsEntry oldEntry : guildIdAndOldEntries.getValue()) {
+				UUID playerId = playerTagToPlayerId.get(oldEntry.getPlayerTag());
+				if (playerId == null) {
+					numUnmatchedEntries++;
+					continue;
+				}
+				oldEntry.setId(RankingsEntry.generateId(oldEntry.getGuildId(), oldEntry.getGameName(), playerId));
+				oldEntry.setPlayerId(playerId);
+				bulkOperations.replaceOne(Query.query(Criteria.where("_id").is(oldEntry.getId())), oldEntry,
+						FindAndReplaceOptions.options().upsert());
+			}
 		}
-		return hasLeaderboardChanged(matchResult);
+		bulkOperations.execute();
+		guildIdToOldEntries.keySet().forEach(rankingsIndex::forgetServer);
+		log.info(String.format("Keyed %s rankings entries by player, dropped %s without a matching player",
+				oldEntries.size() - numUnmatchedEntries, numUnmatchedEntries));
 	}
 
-	private boolean hasLeaderboardChanged(MatchResult matchResult) {
-		int leaderboardLength = matchResult.getGame().getLeaderboardLength();
-		List<RankingsEntry> leaderboard = rankingsEntryDao.findTopByGuildIdAndGameName(
-				matchResult.getServer().getGuildId(),
-				matchResult.getGame().getName(),
-				PageRequest.of(0, leaderboardLength));
-		if (leaderboard.size() < leaderboardLength)
-			return true;
-		double lowestLeaderboardRating = leaderboard.get(leaderboardLength - 1).getRating();
-		for (PlayerMatchResult playerMatchResult : matchResult.getAllPlayerMatchResults()) {
-			Optional<RankingsEntry> maybeRankingsEntry = rankingsEntryDao
-					.findByGuildIdAndGameNameAndPlayerTag(matchResult.getGame().getServer().getGuildId(),
-							matchResult.getGame().getName(), playerMatchResult.getPlayerTag());
-			if (maybeRankingsEntry.isPresent() && leaderboard.contains(maybeRankingsEntry.get())) {
-				return true;
-			}
-			if (playerMatchResult.getNewRating() >= lowestLeaderboardRating) {
-				return true;
-			}
-		}
-		return false;
+	// only for RankingsIndex, which keeps the rankings in memory
+	public List<RankingsEntry> findAllRankingsEntries(Game game) {
+		return rankingsEntryDao.findAllByGuildIdAndGameName(game.getGuildId(), game.getName());
 	}
 
-	public void updateRankingsEntry(Game game, Player player, double newRating) {
-		Optional<RankingsEntry> maybeRankingsEntry = rankingsEntryDao.findByGuildIdAndGameNameAndPlayerTag(
-				game.getServer().getGuildId(), game.getName(), player.getTag());
-		maybeRankingsEntry.ifPresent(rankingsEntryDao::delete);
-		RankingsEntry newRankingsEntry = new RankingsEntry(game, player);
-		rankingsEntryDao.save(newRankingsEntry);
+	public boolean hasLeaderboardChanged(MatchResult matchResult) {
+		return leaderboardChangeDetector.hasLeaderboardChanged(matchResult.getGame(), matchResult.getAllPlayerMatchResults());
 	}
 
-	public boolean hasLeaderboardChanged(Game game, double oldRating, double newRating) {
-		int leaderboardLength = game.getLeaderboardLength();
-		List<RankingsEntry> actualLeaderboard = rankingsEntryDao.findTopByGuildIdAndGameName(
-				game.getServer().getGuildId(),
-				game.getName(),
-				PageRequest.of(0, leaderboardLength));
-		if (actualLeaderboard.size() < leaderboardLength) {
-			return true;
-		}
-		double lowestLeaderboardRating = actualLeaderboard.get(leaderboardLength - 1).getRating();
-		return lowestLeaderboardRating <= Math.max(oldRating, newRating);
+	public void updateRankingsEntry(Game game, Player player) {
+		RankingsEntry newRankingsEntry = new RankingsEntry(game, player);
+		rankingsEntryDao.save(newRankingsEntry);// upserts by id
+		rankingsIndex.put(newRankingsEntry);
 	}
 
+	public boolean hasLeaderboardChanged(Game game, Player player, double newRating) {
+		return leaderboardChangeDetector.hasLeaderboardChanged(game, player.getId(), newRating);
+	}
 
 	public void deleteAllRankingsEntries(Game game) {
 		rankingsEntryDao.deleteAllByGuildIdAndAndGameName(game.getGuildId(), game.getName());
+		rankingsIndex.forgetRanking(game);
+		leaderboardChangeDetector.forgetLeaderboard(game);
+	}
+
+	// WriteBatch
+	public WriteBatch newWriteBatch() {
+		return new WriteBatch();
+	}
+
+	/* Mongo bulk writes are per collection, so this is one unordered bulk write per collection in the batch. Players go
+	first, so a conflict that cannot be resolved fails the batch before anything else is written.
+	The caches are only updated after all writes went through. */
+	public void write(WriteBatch writeBatch) {
+		if (writeBatch.isEmpty()) return;
+
+		writePlayers(writeBatch.idToPlayer.values());
+		writeBatch.classToIdToDocument.forEach((documentClass, idToDocument) -> {
+			BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, documentClass);
+			idToDocument.forEach((id, document) -> bulkOperations.replaceOne(
+					Query.query(Criteria.where("_id").is(id)), document, FindAndReplaceOptions.options().upsert()));
+			bulkOperations.execute();
+		});
+		rankingsIndex.putAll(writeBatch.idToRankingsEntry.values());
+	}
+
+	/* A player is only replaced if the stored version is still the one it was read with. When fewer players than that
+	were replaced, the ones that were not are found by comparing with what is stored, and saved on their own, which
+	merges them with the other change, see saveCopy. */
+	private void writePlayers(Collection<Player> players) {
+		if (players.isEmpty()) return;
+
+		Map<UUID, Long> playerIdToReadVersion = new HashMap<>();
+		BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Player.class);
+		for (Player player : players) {
+			if (player.getVersion() == null) continue;// not stored yet
+
+			playerIdToReadVersion.put(player.getId(), player.getVersion());
+			player.setVersion(player.getVersion() + 1);
+			bulkOperations.replaceOne(Query.query(Criteria.where("_id").is(player.getId())
+					.and("version").is(playerIdToReadVersion.get(player.getId()))), player);
+		}
+		int numReplaced = playerIdToReadVersion.isEmpty() ? 0 : bulkOperations.execute().getMatchedCount();
+
+		Map<UUID, org.bson.Document> playerIdToStoredDocument = new HashMap<>();
+		if (numReplaced < players.size()) {
+			mongoTemplate.find(Query.query(Criteria.where("_id").in(players.stream().map(Player::getId).toList())),
+							org.bson.Document.class, mongoTemplate.getCollectionName(Player.class))
+					.forEach(document -> {
+						org.bson.Document storedDocument = playerCache.normalize(document);
+						playerIdToStoredDocument.put(Player.generateId(storedDocument.get("guildId", Number.class).longValue(),
+								storedDocument.get("userId", Number.class).longValue()), storedDocument);
+					});
+		}
+		for (Player player : players) {
+			boolean isReplaced = numReplaced == players.size()
+					|| playerCache.toDocument(player).equals(playerIdToStoredDocument.get(player.getId()));
+			if (isReplaced) {
+				playerCache.put(player.getId(), player);
+			} else {
+				player.setVersion(playerIdToReadVersion.get(player.getId()));
+				saveCopy("player", playerCache, player.getId(), player, Player::getVersion, Player::setVersion);
+			}
+		}
 	}
 
 	// Statistics
@@ -0,0 +1,136 @@
+package com.elorankingbot.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/* Caches documents in the form they are stored in, and hands out a new instance on every read. Every caller changes
+its own copy, so a change that is never saved does not reach other readers, and no instance is changed by one thread
+while another one reads or serializes it.
+The documents copies were read from are kept for a while by version, so when saving a copy conflicts with a save made
+since it was read, the changes of the copy can be told apart from the rest, see merge. */
+class DocumentCache<K, T> {
+
+	private static final String VERSION = "version";
+
+	private final Cache<K, Document> documents;
+	private final Cache<VersionKey<K>, Document> documentsByVersion = CacheBuilder.newBuilder()
+			.expireAfterWrite(Duration.ofMinutes(15))
+			.build();
+	private final MongoConverter mongoConverter;
+	private final Class<T> documentClass;
+	private final Set<String> keysWhereCopyWins;
+
+	private record VersionKey<K>(K id, Object version) {
+	}
+
+	/* keysWhereCopyWins names fields that are kept up to date in memory for all copies, so the value of the copy that
+	is saved is always the newest one, see QueueRegistry. */
+	DocumentCache(Cache<K, Document> documents, MongoConverter mongoConverter, Class<T> documentClass,
+				  Set<String> keysWhereCopyWins) {
+		this.documents = documents;
+		this.mongoConverter = mongoConverter;
+		this.documentClass = documentClass;
+		this.keysWhereCopyWins = keysWhereCopyWins;
+	}
+
+	Optional<T> get(K id) {
+		Document document = documents.getIfPresent(id);
+		return document == null ? Optional.empty() : Optional.of(mongoConverter.read(documentClass, document));
+	}
+
+	Map<K, T> getAllPresent(Iterable<K> ids) {
+		Map<K, T> idToValue = new HashMap<>();
+		documents.getAllPresent(ids).forEach((id, document) -> idToValue.put(id, mongoConverter.read(documentClass, document)));
+		return idToValue;
+	}
+
+	// the cache keeps the state of value at the time of the call, later changes to value are not seen
+	void put(K id, T value) {
+		Document document = toDocument(value);
+		documents.put(id, document);
+		documentsByVersion.put(new VersionKey<>(id, document.get(VERSION)), document);
+	}
+
+	Document toDocument(T value) {
+		Document document = new Document();
+		mongoConverter.write(value, document);
+		return document;
+	}
+
+	// a document as read from the database, written the same way as the documents of the cache, so equal values compare equal
+	Document normalize(Document storedDocument) {
+		return toDocument(mongoConverter.read(documentClass, storedDocument));
+	}
+
+	/* Applies a partial update that was written to the database to the cached document, if the cached document is the
+	version the update was made to. Otherwise the cached document is outdated, and is dropped. */
+	void update(K id, Object versionBefore, Object versionAfter, Consumer<T> change) {
+		documents.asMap().computeIfPresent(id, (key, document) -> {
+			if (!Objects.equals(document.get(VERSION), versionBefore)) return null;
+
+			T value = mongoConverter.read(documentClass, document);
+			change.accept(value);
+			Document updatedDocument = toDocument(value);
+			updatedDocument.put(VERSION, versionAfter);
+			documentsByVersion.put(new VersionKey<>(id, versionAfter), updatedDocument);
+			return updatedDocument;
+		});
+	}
+
+	void invalidate(K id) {
+		documents.invalidate(id);
+	}
+
+	void invalidateAll(Iterable<K> ids) {
+		documents.invalidateAll(ids);
+	}
+
+	void invalidateIf(Predicate<Document> predicate) {
+		documents.asMap().values().removeIf(predicate);
+	}
+
+	/* Applies the changes that copy made to the document of readVersion it was read from to storedDocument, and returns
+	the result with the version of storedDocument. Returns empty if the document copy was read from is not known anymore,
+	or if a value was changed by both. */
+	Optional<T> merge(K id, Object readVersion, Document copy, Document storedDocument) {
+		Document readDocument = documentsByVersion.getIfPresent(new VersionKey<>(id, readVersion));
+		if (readDocument == null || storedDocument == null) return Optional.empty();
+
+		Document stored = normalize(storedDocument);
+		if (!mergeChanges(readDocument, copy, stored, keysWhereCopyWins)) return Optional.empty();
+		return Optional.of(mongoConverter.read(documentClass, stored));
+	}
+
+	/* A three way merge into stored of what changed from base to copy. Nested documents are merged by field, other values
+	like lists are compared as a whole. The version is left as stored. */
+	static boolean mergeChanges(Document base, Document copy, Document stored, Set<String> keysWhereCopyWins) {
+		Set<String> keys = new LinkedHashSet<>(base.keySet());
+		keys.addAll(copy.keySet());
+		for (String key : keys) {
+			if (key.equals(VERSION)) continue;
+
+			Object baseValue = base.get(key);
+			Object copyValue = copy.get(key);
+			Object storedValue = stored.get(key);
+			if (Objects.equals(baseValue, copyValue) || Objects.equals(copyValue, storedValue)) continue;
+
+			if (Objects.equals(baseValue, storedValue) || keysWhereCopyWins.contains(key)) {
+				if (copy.containsKey(key)) stored.put(key, copyValue);
+				else stored.remove(key);
+			} else if (baseValue instanceof Document baseDocument && copyValue instanceof Document copyDocument
+					&& storedValue instanceof Document storedDocument) {
+				if (!mergeChanges(baseDocument, copyDocument, storedDocument, keysWhereCopyWins)) return false;
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,65 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.model.Game;
+import com.elorankingbot.model.PlayerMatchResult;
+import com.elorankingbot.model.RankingsEntry;
+import com.elorankingbot.model.RankingsExcerpt;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/* Remembers what each leaderboard message currently shows, so deciding whether a rating change needs the message
+to be refreshed does not have to look at the ranking at all. A leaderboard that has not been shown since startup
+always counts as changed. */
+@Component
+public class LeaderboardChangeDetector {
+
+	private record LeaderboardKey(long guildId, String gameName) {
+
+		static LeaderboardKey of(Game game) {
+			return new LeaderboardKey(game.getGuildId(), game.getName());
+		}
+	}
+
+	private record DisplayedLeaderboard(boolean isFull, double cutoffRating, Set<UUID> playerIds) {
+	}
+
+	private final Map<LeaderboardKey, DisplayedLeaderboard> displayedLeaderboards = new ConcurrentHashMap<>();
+
+	public void recordDisplayed(RankingsExcerpt leaderboard) {
+		List<RankingsEntry> entries = leaderboard.rankingsEntries();
+		boolean isFull = entries.size() >= leaderboard.game().getLeaderboardLength();
+		double cutoffRating = entries.isEmpty() ? Double.NEGATIVE_INFINITY : entries.get(entries.size() - 1).getRating();
+		Set<UUID> playerIds = entries.stream().map(RankingsEntry::getPlayerId).collect(Collectors.toSet());
+		displayedLeaderboards.put(LeaderboardKey.of(leaderboard.game()), new DisplayedLeaderboard(isFull, cutoffRating, playerIds));
+	}
+
+	public boolean hasLeaderboardChanged(Game game, List<PlayerMatchResult> playerMatchResults) {
+		DisplayedLeaderboard displayedLeaderboard = displayedLeaderboards.get(LeaderboardKey.of(game));
+		if (displayedLeaderboard == null || !displayedLeaderboard.isFull()) return true;
+
+		return playerMatchResults.stream().anyMatch(playerMatchResult ->
+				displayedLeaderboard.playerIds().contains(playerMatchResult.getPlayerId())
+						|| playerMatchResult.getNewRating() >= displayedLeaderboard.cutoffRating());
+	}
+
+	public boolean hasLeaderboardChanged(Game game, UUID playerId, double newRating) {
+		DisplayedLeaderboard displayedLeaderboard = displayedLeaderboards.get(LeaderboardKey.of(game));
+		if (displayedLeaderboard == null || !displayedLeaderboard.isFull()) return true;
+
+		return displayedLeaderboard.playerIds().contains(playerId) || newRating >= displayedLeaderboard.cutoffRating();
+	}
+
+	public void forgetLeaderboard(Game game) {
+		displayedLeaderboards.remove(LeaderboardKey.of(game));
+	}
+
+	public void forgetServer(long guildId) {
+		displayedLeaderboards.keySet().removeIf(leaderboardKey -> leaderboardKey.guildId() == guildId);
+	}
+}
@@ -0,0 +1,89 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.logging.ExceptionHandler;
+import com.elorankingbot.model.Game;
+import com.elorankingbot.model.Server;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.apachecommons.CommonsLog;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Leaderboard messages are not edited right away when a ranking changes. Requests are collected, and every
+leaderboard that was requested since the last run is edited once, so a busy ranking causes at most one edit per
+interval no matter how many matches end in between. An edit that is still running when the next interval starts keeps
+its leaderboard out of that run, so two edits of the same message never overlap. */
+@CommonsLog
+@Service
+public class LeaderboardRefreshScheduler {
+
+	private final DBService dbService;
+	private final ChannelManager channelManager;
+	private final ExceptionHandler exceptionHandler;
+	private final Set<LeaderboardKey> requestedLeaderboards = ConcurrentHashMap.newKeySet();
+	private final Set<LeaderboardKey> refreshesInProgress = ConcurrentHashMap.newKeySet();
+	private final Counter requestedCounter, coalescedCounter, issuedCounter;
+
+	private record LeaderboardKey(long guildId, String gameName) {
+	}
+
+	public LeaderboardRefreshScheduler(Services services, MeterRegistry meterRegistry) {
+		this.dbService = services.dbService;
+		this.channelManager = services.channelManager;
+		this.exceptionHandler = services.exceptionHandler;
+		this.requestedCounter = createCounter(meterRegistry, "requested");
+		this.coalescedCounter = createCounter(meterRegistry, "coalesced");
+		this.issuedCounter = createCounter(meterRegistry, "issued");
+	}
+
+	private static Counter createCounter(MeterRegistry meterRegistry, String outcome) {
+		return Counter.builder("elorankingbot.leaderboard.refresh")
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+
+	public void requestRefresh(Game game) {
+		requestedCounter.increment();
+		boolean isNewRequest = requestedLeaderboards.add(new LeaderboardKey(game.getGuildId(), game.getName()));
+		if (!isNewRequest) coalescedCounter.increment();
+	}
+
+	@Scheduled(fixedDelayString = "${elorankingbot.leaderboard-refresh-interval}")
+	public void refreshRequestedLeaderboards() {
+		if (requestedLeaderboards.isEmpty()) return;
+
+		Set<LeaderboardKey> leaderboardKeys = new HashSet<>(requestedLeaderboards);
+		requestedLeaderboards.removeAll(leaderboardKeys);
+		for (LeaderboardKey leaderboardKey : leaderboardKeys) {
+			// the request stays for the next run
+			if (!refreshesInProgress.add(leaderboardKey)) {
+				requestedLeaderboards.add(leaderboardKey);
+				continue;
+			}
+			Mono.fromRunnable(() -> refreshLeaderboard(leaderboardKey))
+					.subscribeOn(Schedulers.boundedElastic())
+					.doFinally(signalType -> refreshesInProgress.remove(leaderboardKey))
+					.subscribe(ExceptionHandler.NO_OP, throwable -> exceptionHandler.handleException(throwable,
+							String.format("%s::refreshLeaderboard on %s:%s", this.getClass().getSimpleName(),
+									leaderboardKey.guildId(), leaderboardKey.gameName())));
+		}
+	}
+
+	private void refreshLeaderboard(LeaderboardKey leaderboardKey) {
+		Optional<Server> maybeServer = dbService.findServer(leaderboardKey.guildId());
+		if (maybeServer.isEmpty()) return;
+		Game game = maybeServer.get().getGame(leaderboardKey.gameName());
+		if (game == null) return;// the ranking was deleted in the meantime
+
+		// waits for the edit, so the refresh counts as in progress until the message is edited
+		channelManager.editLeaderboard(game).block();
+		issuedCounter.increment();
+	}
+}
@@ -1,7 +1,10 @@
 package com.elorankingbot.service;
 
 import com.elorankingbot.components.EmbedBuilder;
+import com.elorankingbot.logging.ExceptionHandler;
 import com.elorankingbot.model.*;
+import com.elorankingbot.timedtask.TimedTask;
+import com.elorankingbot.timedtask.TimedTaskScheduler;
 import com.google.common.collect.Iterables;
 import discord4j.core.event.domain.interaction.ChatInputInteractionEvent;
 import discord4j.core.object.entity.Member;
@@ -10,11 +13,16 @@ import discord4j.core.object.entity.Role;
 import discord4j.core.object.entity.User;
 import discord4j.core.object.entity.channel.TextChannel;
 import discord4j.core.spec.EmbedCreateSpec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -25,27 +33,56 @@ public class MatchService {
 	private final DiscordBotService bot;
 	private final ChannelManager channelManager;
 	private final QueueScheduler queueScheduler;
+	private final LeaderboardRefreshScheduler leaderboardRefreshScheduler;
+	private final TimedTaskScheduler timedTaskScheduler;
+	private final ExceptionHandler exceptionHandler;
+	private final MeterRegistry meterRegistry;
 	private final Consumer<Object> NO_OP = object -> {};
 
-	public MatchService(Services services) {
+	public MatchService(Services services, MeterRegistry meterRegistry) {
 		this.dbService = services.dbService;
 		this.bot = services.bot;
 		this.channelManager = services.channelManager;
 		this.queueScheduler = services.queueScheduler;
+		this.leaderboardRefreshScheduler = services.leaderboardRefreshScheduler;
+		this.timedTaskScheduler = services.timedTaskScheduler;
+		this.exceptionHandler = services.exceptionHandler;
+		this.meterRegistry = meterRegistry;
 	}
 
-	public void startMatch(Match match) {
-		TextChannel channel = channelManager.createMatchChannel(match).block();
-		channelManager.sendMatchMessage(channel, match);
-		dbService.saveMatch(match);
+	// nothing in here blocks, so many matches can be starting at the same time
+	public Mono<Match> startMatch(Match match) {
+		return channelManager.createMatchChannel(match)
+				.transform(timedStage("match.start", "create-channel"))
+				.flatMap(channel -> channelManager.sendMatchMessage(channel, match)
+						.transform(timedStage("match.start", "send-message")))
+				.flatMap(message -> channelManager.pinMessage(message)
+						.transform(timedStage("match.start", "pin-message")))
+				.flatMap(message -> Mono.fromCallable(() -> {
+							dbService.saveMatch(match);
+							return match;
+						})
+						.subscribeOn(Schedulers.boundedElastic())
+						.transform(timedStage("match.start", "persist")));
 	}
 
-	public static MatchResult generateMatchResult(Match match) {
+	private <T> Function<Mono<T>, Mono<T>> timedStage(String pipeline, String stage) {
+		Timer timer = Timer.builder("elorankingbot." + pipeline)
+				.tag("stage", stage)
+				.register(meterRegistry);
+		return mono -> Mono.defer(() -> {
+			long start = System.nanoTime();
+			return mono.doOnSuccess(ignored -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+		});
+	}
+
+	// the rating snapshots of the match are only for display, results are computed from the current ratings
+	public MatchResult generateMatchResult(Match match) {
 		MatchResult matchResult = new MatchResult(match);
 		Game game = match.getQueue().getGame();
-		for (List<Player> team : match.getTeams()) {
-			List<Player> allOtherPlayers = match.getPlayers();
-			team.forEach(allOtherPlayers::remove);
+		for (List<Player> team : resolveTeams(match)) {
+			List<Player> allOtherPlayers = new ArrayList<>(dbService.findPlayers(match.getPlayerIds()));
+			allOtherPlayers.removeAll(team);
 			double averageTeamRating = team.stream()
 					.mapToDouble(player -> player.getOrCreatePlayerGameStats(game).getRating())
 					.average().getAsDouble();
@@ -62,7 +99,7 @@ public class MatchService {
 				double oldRating = player.getOrCreatePlayerGameStats(game).getRating();
 				double newRating = oldRating + match.getQueue().getK() * (actualResult - expectedResult);
 				PlayerMatchResult playerMatchResult = new PlayerMatchResult(
-						player, player.getTag(),
+						player,
 						ReportStatus.valueOf(match.getReportStatus(player.getId()).name()),
 						oldRating, newRating);
 				teamResult.add(playerMatchResult);
@@ -73,15 +110,15 @@ public class MatchService {
 		return matchResult;
 	}
 
-	public static MatchResult generateCanceledMatchResult(Match match) {
+	public MatchResult generateCanceledMatchResult(Match match) {
 		MatchResult matchResult = new MatchResult(match);
 		Game game = match.getQueue().getGame();
-		for (List<Player> team : match.getTeams()) {
+		for (List<Player> team : resolveTeams(match)) {
 			TeamMatchResult teamResult = new TeamMatchResult();
 			for (Player player : team) {
 				double oldRating = player.getOrCreatePlayerGameStats(game).getRating();
 				PlayerMatchResult playerMatchResult = new PlayerMatchResult(
-						player, player.getTag(),
+						player,
 						ReportStatus.CANCEL,
 						oldRating, oldRating);
 				teamResult.add(playerMatchResult);
@@ -91,42 +128,45 @@ public class MatchService {
 		return matchResult;
 	}
 
+	private List<List<Player>> resolveTeams(Match match) {
+		return match.getTeams().stream()
+				.map(team -> dbService.findPlayers(team.stream().map(PlayerReference::getId).toList()))
+				.toList();
+	}
+
+	/* The database is brought up to date synchronously. All Discord side effects run afterwards, asynchronously
+	and concurrently, so the caller does not wait on Discord round trips. */
 	public void processMatchResult(MatchResult matchResult, Match match, String embedTitle, Function<Role, Consumer<Throwable>> manageRoleFailedCallback) {
 		Game game = match.getGame();
-		TextChannel matchChannel = (TextChannel) bot.getChannelById(match.getChannelId()).block();// TODO was wenn der channel weg ist
-		Message newMatchMessage = matchChannel.createMessage(EmbedBuilder.createCompletedMatchEmbed(embedTitle, matchResult))
-				// users have called for these mentions to be removed. if other users again call for them be implemented,
-				// make them a setting:
-				//.withContent(match.getAllMentions())
-				.block();
-		newMatchMessage.pin().subscribe();
-		bot.getMessage(match.getMessageId(), match.getChannelId())
-				.subscribe(oldMatchMessage -> oldMatchMessage.delete().subscribe());
-		channelManager.moveToArchive(game.getServer(), matchChannel);
-
-		Message resultChannelMessage = channelManager.postToResultChannel(matchResult);
-
-		dbService.saveMatchResultReference(new MatchResultReference(resultChannelMessage, newMatchMessage, matchResult.getId()));
-		dbService.saveMatchResult(matchResult);
+		List<Player> players = dbService.findPlayers(matchResult.getPlayerIds());
+		boolean leaderboardNeedsRefresh = commitMatchResult(matchResult, players, game);
+		// only once the result is stored, so a failed commit leaves the match to be resolved again
 		dbService.deleteMatch(match);
-		matchResult.getPlayers().forEach(player -> {
-			player.addMatchResult(matchResult);
-			dbService.savePlayer(player);
-		});
-		if (matchResult.isCanceled()) {
-			return;
-		}
-
-		matchResult.getPlayers().forEach(player -> {
-			queueScheduler.updatePlayerInAllQueuesOfGame(game, player);
-			updatePlayerMatches(game, player);
-		});
-		boolean leaderboardNeedsRefresh = dbService.updateRankingsEntries(matchResult);
-		if (leaderboardNeedsRefresh) channelManager.refreshLeaderboard(game);
-		for (Player player : match.getPlayers()) {
-			updatePlayerRank(game, player, manageRoleFailedCallback);
-		}
-		dbService.addMatchResultToStats(matchResult);
+		timedTaskScheduler.cancelTimedTasks(TimedTask.matchKey(match.getId()));// reminders and auto resolve are moot now
+
+		Mono<Message> newMatchMessageMono = bot.getChannelById(match.getChannelId())// TODO was wenn der channel weg ist
+				.cast(TextChannel.class)
+				.flatMap(matchChannel -> matchChannel
+						.createMessage(EmbedBuilder.createCompletedMatchEmbed(embedTitle, matchResult))
+						// users have called for these mentions to be removed. if other users again call for them be implemented,
+						// make them a setting:
+						//.withContent(match.getAllMentions())
+						.transform(timedStage("match.result", "match-channel"))
+						.flatMap(channelManager::pinMessage)
+						.doOnNext(newMatchMessage -> bot.getMessage(match.getMessageId(), match.getChannelId())
+								.subscribe(oldMatchMessage -> oldMatchMessage.delete().subscribe(), throwable -> {}))
+						.publishOn(Schedulers.boundedElastic())
+						.doOnNext(newMatchMessage -> channelManager.moveToArchive(game.getServer(), matchChannel)));
+		Mono<Message> resultChannelMessageMono = channelManager.postToResultChannel(matchResult)
+				.transform(timedStage("match.result", "result-channel"));
+		Mono.zip(resultChannelMessageMono, newMatchMessageMono)
+				.publishOn(Schedulers.boundedElastic())
+				.subscribe(resultAndMatchMessage -> dbService.saveMatchResultReference(new MatchResultReference(
+								resultAndMatchMessage.getT1(), resultAndMatchMessage.getT2(), matchResult.getId())),
+						throwable -> exceptionHandler.handleException(throwable, "MatchService::processMatchResult"));
+
+		if (matchResult.isCanceled()) return;
+		runSideEffectsOfMatchResult(players, game, leaderboardNeedsRefresh, manageRoleFailedCallback);
 	}
 
 	/* This differs from processMatchResult in the following ways:
@@ -135,39 +175,57 @@ public class MatchService {
 	- event is supplied for the callback if sending DM fails */
 	public EmbedCreateSpec processForcedMatchResult(MatchResult forcedMatchResult, List<User> users, String embedTitle,
 													ChatInputInteractionEvent event, Function<Role, Consumer<Throwable>> manageRoleFailedCallback) {
+		Game game = forcedMatchResult.getGame();
+		List<Player> players = dbService.findPlayers(forcedMatchResult.getPlayerIds());
+		boolean leaderboardNeedsRefresh = commitMatchResult(forcedMatchResult, players, game);
+
 		EmbedCreateSpec matchEmbed = EmbedBuilder.createCompletedMatchEmbed(embedTitle, forcedMatchResult);
 		for (User user : users) {
 			bot.sendDM(user, event, matchEmbed);
 		}
-		Message resultChannelMessage = channelManager.postToResultChannel(forcedMatchResult);
-		dbService.saveMatchResultReference(new MatchResultReference(resultChannelMessage, forcedMatchResult.getId()));
-		dbService.saveMatchResult(forcedMatchResult);
-		Game game = forcedMatchResult.getGame();
-		forcedMatchResult.getPlayers().forEach(player -> {
-			player.addMatchResult(forcedMatchResult);
-			dbService.savePlayer(player);
-			queueScheduler.updatePlayerInAllQueuesOfGame(game, player);
-			updatePlayerMatches(game, player);
-			updatePlayerRank(game, player, manageRoleFailedCallback);
-		});
-		boolean leaderboardNeedsRefresh = dbService.updateRankingsEntries(forcedMatchResult);
-		if (leaderboardNeedsRefresh) channelManager.refreshLeaderboard(game);
-		dbService.addMatchResultToStats(forcedMatchResult);
+		channelManager.postToResultChannel(forcedMatchResult)
+				.transform(timedStage("match.result", "result-channel"))
+				.publishOn(Schedulers.boundedElastic())
+				.subscribe(resultChannelMessage -> dbService.saveMatchResultReference(
+								new MatchResultReference(resultChannelMessage, forcedMatchResult.getId())),
+						throwable -> exceptionHandler.handleException(throwable, "MatchService::processForcedMatchResult"));
+
+		runSideEffectsOfMatchResult(players, game, leaderboardNeedsRefresh, manageRoleFailedCallback);
 		return matchEmbed;
 	}
 
-	public void updatePlayerMatches(Game game, Player player) {
-		for (Match match : dbService.findAllMatchesByServer(game.getServer())) {
-			boolean hasMatchChanged = match.updatePlayerIfPresent(player);
-			if (hasMatchChanged) {
-				dbService.saveMatch(match);
-				bot.getMessage(match.getMessageId(), match.getChannelId())
-						.subscribe(message -> message.edit()
-										.withEmbeds(EmbedBuilder.createMatchEmbed(message.getEmbeds().get(0).getTitle().get(), match))
-										.subscribe(),
-								throwable -> {});
-			}
+	private boolean commitMatchResult(MatchResult matchResult, List<Player> players, Game game) {
+		long start = System.nanoTime();
+		players.forEach(player -> player.addMatchResult(matchResult));
+		WriteBatch writeBatch = dbService.newWriteBatch()
+				.saveMatchResult(matchResult)
+				.savePlayers(players)
+				.addToMatchHistory(matchResult, players);
+		if (!matchResult.isCanceled()) writeBatch.updateRankingsEntries(game, players);
+		dbService.write(writeBatch);
+		boolean leaderboardNeedsRefresh = false;
+		if (!matchResult.isCanceled()) {
+			players.forEach(player -> queueScheduler.updatePlayerInAllQueuesOfGame(game, player));
+			leaderboardNeedsRefresh = dbService.hasLeaderboardChanged(matchResult);
+			dbService.addMatchResultToStats(matchResult);
 		}
+		Timer.builder("elorankingbot.match.result").tag("stage", "commit").register(meterRegistry)
+				.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		return leaderboardNeedsRefresh;
+	}
+
+	private void runSideEffectsOfMatchResult(List<Player> players, Game game, boolean leaderboardNeedsRefresh,
+											 Function<Role, Consumer<Throwable>> manageRoleFailedCallback) {
+		if (leaderboardNeedsRefresh) leaderboardRefreshScheduler.requestRefresh(game);
+		for (Player player : players) {
+			runAsync("updatePlayerRank", () -> updatePlayerRank(game, player, manageRoleFailedCallback));
+		}
+	}
+
+	private void runAsync(String description, Runnable sideEffect) {
+		Mono.fromRunnable(sideEffect)
+				.subscribeOn(Schedulers.boundedElastic())
+				.subscribe(NO_OP, throwable -> exceptionHandler.handleException(throwable, "MatchService::" + description));
 	}
 
 	public void updatePlayerRank(Game game, Player player, Function<Role, Consumer<Throwable>> manageRoleFailedCallback) {
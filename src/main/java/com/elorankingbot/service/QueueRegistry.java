@@ -0,0 +1,91 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.model.Group;
+import com.elorankingbot.model.MatchFinderQueue;
+import com.elorankingbot.model.QueueKey;
+import com.elorankingbot.model.Server;
+import lombok.extern.apachecommons.CommonsLog;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/* Holds the groups of every queue while the bot runs. Every Server loaded through DBService gets the in-memory
+group lists attached to its queues, so all copies of a Server share the same groups. Changes are written back to the
+Server documents in batches, and the persisted groups are only read when a queue is first attached after startup. */
+@CommonsLog
+@Component
+public class QueueRegistry {
+
+	private final DBService dbService;
+	private final Map<QueueKey, List<Group>> queueKeyToGroups = new ConcurrentHashMap<>();
+	private final Set<QueueKey> unsavedQueues = ConcurrentHashMap.newKeySet();
+
+	public QueueRegistry(Services services) {
+		this.dbService = services.dbService;
+	}
+
+	public void attach(Server server) {
+		for (MatchFinderQueue queue : server.getQueues()) {
+			List<Group> groups = queueKeyToGroups.computeIfAbsent(QueueKey.of(queue),
+					queueKey -> new CopyOnWriteArrayList<>(refreshRatings(queue.getGroups()).stream()
+							.sorted(queue.groupOrder()).toList()));
+			queue.setGroups(groups);
+		}
+	}
+
+	// the persisted rating snapshots may be outdated
+	private List<Group> refreshRatings(List<Group> groups) {
+		for (Group group : groups) {
+			dbService.findPlayers(group.getPlayerIds()).forEach(group::updatePlayerIfPresent);
+		}
+		return groups;
+	}
+
+	public void markUnsaved(MatchFinderQueue queue) {
+		unsavedQueues.add(QueueKey.of(queue));
+	}
+
+	// drops queues of the server that no longer exist, ie were deleted or renamed
+	public void forgetQueuesMissingFrom(Server server) {
+		Set<QueueKey> presentQueueKeys = new HashSet<>(server.getQueues().stream().map(QueueKey::of).toList());
+		queueKeyToGroups.keySet().removeIf(queueKey -> queueKey.guildId() == server.getGuildId()
+				&& !presentQueueKeys.contains(queueKey));
+		unsavedQueues.removeIf(queueKey -> queueKey.guildId() == server.getGuildId()
+				&& !presentQueueKeys.contains(queueKey));
+	}
+
+	public void forgetServer(long guildId) {
+		queueKeyToGroups.keySet().removeIf(queueKey -> queueKey.guildId() == guildId);
+		unsavedQueues.removeIf(queueKey -> queueKey.guildId() == guildId);
+	}
+
+	@Scheduled(fixedDelay = 5000)
+	public void saveUnsavedQueues() {
+		if (unsavedQueues.isEmpty()) return;
+
+		Set<QueueKey> queueKeys = new HashSet<>(unsavedQueues);
+		unsavedQueues.removeAll(queueKeys);
+		for (QueueKey queueKey : queueKeys) {
+			List<Group> groups = queueKeyToGroups.get(queueKey);
+			if (groups == null) continue;
+			try {
+				dbService.saveQueueGroups(queueKey, groups);
+			} catch (Exception e) {
+				log.error(String.format("Failed to save queue %s: %s", queueKey, e.getMessage()));
+				unsavedQueues.add(queueKey);
+			}
+		}
+	}
+
+	@PreDestroy
+	public void saveUnsavedQueuesOnShutdown() {
+		saveUnsavedQueues();
+	}
+}
@@ -2,12 +2,20 @@ package com.elorankingbot.service;
 
 import com.elorankingbot.logging.ExceptionHandler;
 import com.elorankingbot.model.*;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.apachecommons.CommonsLog;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -18,74 +26,207 @@ public class QueueScheduler {
     private final DiscordBotService bot;
     private final MatchService matchService;
     private final ExceptionHandler exceptionHandler;
+    private final QueueRegistry queueRegistry;
+    private final Set<QueueKey> dirtyQueues = ConcurrentHashMap.newKeySet();
+    private final Set<QueueKey> queuesWaitingForElasticity = ConcurrentHashMap.newKeySet();
+    private boolean hasDoneInitialScan = false;
+    // guilds are matched in parallel, but each guild only by one worker at a time
+    private final ExecutorService matchmakingExecutor;
+    private final Set<Long> guildsInProgress = ConcurrentHashMap.newKeySet();
+    private final Timer queueToMatchTimer;
 
-    public QueueScheduler(Services services) {
+    public QueueScheduler(Services services, MeterRegistry meterRegistry) {
         this.dbService = services.dbService;
         this.bot = services.bot;
         this.matchService = services.matchService;
         this.exceptionHandler = services.exceptionHandler;
+        this.queueRegistry = services.queueRegistry;
+        this.matchmakingExecutor = Executors.newFixedThreadPool(services.props.getMatchmakingThreads(),
+                new ThreadFactoryBuilder().setNameFormat("matchmaking-%d").setDaemon(true).build());
+        this.queueToMatchTimer = Timer.builder("elorankingbot.matchmaking.queue.to.match")
+                .description("Time from joining a queue to being assigned a match")
+                .register(meterRegistry);
+        Gauge.builder("elorankingbot.matchmaking.dirty.queues", dirtyQueues, Set::size).register(meterRegistry);
     }
 
+    /* Matchmaking only looks at queues that have been marked dirty since the last run: a group joined, a rating
+    of a waiting player changed, or the queue settings changed. Queues with a rating spread limit that still have
+    enough players waiting get rechecked on a slower timer, since rating elasticity widens with time. */
     @Scheduled(fixedRate = 3000)
     public void generateAndStartMatches() {
-        dbService.findAllServers().stream()
-                .flatMap(server -> server.getGames().stream())
-                .flatMap(game -> game.getQueues().stream()).forEach(
-                        queue -> {
-                            try {
-                                boolean foundMatch;
-                                do {
-                                    Optional<Match> maybeMatch = generateMatchIfPossible(queue);
-                                    if (maybeMatch.isPresent()) {
-                                        for (Player player : maybeMatch.get().getPlayers())
-                                            removePlayerFromAllQueues(queue.getServer(), player);
-                                        matchService.startMatch(maybeMatch.get());
-                                        foundMatch = true;
-                                    } else {
-                                        foundMatch = false;
-                                    }
-                                } while (foundMatch);
-                            } catch (Exception e) {
-                                String context = String.format("%s::generateAndStartMatches on %s:%s:%s",
-                                        this.getClass().getSimpleName(), bot.getServerIdAndName(queue.getServer()),
-                                        queue.getGame().getName(), queue.getName());
-                                exceptionHandler.handleException(e, context);
-                            }
-                        });
+        if (!hasDoneInitialScan) {
+            dbService.findAllServers().stream()
+                    .flatMap(server -> server.getQueues().stream())
+                    .filter(queue -> !queue.getGroups().isEmpty())
+                    .forEach(this::markQueueDirty);
+            hasDoneInitialScan = true;
+        }
+        if (dirtyQueues.isEmpty()) return;
+
+        Set<QueueKey> queueKeys = new HashSet<>(dirtyQueues);
+        dirtyQueues.removeAll(queueKeys);
+        Map<Long, List<QueueKey>> guildIdToQueueKeys = queueKeys.stream()
+                .collect(Collectors.groupingBy(QueueKey::guildId));
+        guildIdToQueueKeys.forEach((guildId, queueKeysOfGuild) -> {
+            // the guild is still being worked on from an earlier run, try again on the next one
+            if (!guildsInProgress.add(guildId)) {
+                dirtyQueues.addAll(queueKeysOfGuild);
+                return;
+            }
+            matchmakingExecutor.execute(() -> {
+                try {
+                    generateAndStartMatches(guildId, queueKeysOfGuild);
+                } finally {
+                    guildsInProgress.remove(guildId);
+                }
+            });
+        });
+    }
+
+    private void generateAndStartMatches(long guildId, List<QueueKey> queueKeys) {
+        Optional<Server> maybeServer;
+        try {
+            maybeServer = dbService.findServer(guildId);
+        } catch (Exception e) {
+            exceptionHandler.handleException(e, String.format("%s::generateAndStartMatches on %s",
+                    this.getClass().getSimpleName(), guildId));
+            return;
+        }
+        if (maybeServer.isEmpty()) return;
+
+        for (QueueKey queueKey : queueKeys) {
+            Game game = maybeServer.get().getGame(queueKey.gameName());
+            if (game == null) continue;
+            MatchFinderQueue queue = game.getQueue(queueKey.queueName());
+            if (queue == null) continue;
+            generateAndStartMatches(queue);
+        }
+    }
+
+    @Scheduled(fixedRate = 30000)
+    public void recheckQueuesForRatingElasticity() {
+        Set<QueueKey> queueKeys = new HashSet<>(queuesWaitingForElasticity);
+        queuesWaitingForElasticity.removeAll(queueKeys);
+        dirtyQueues.addAll(queueKeys);
+    }
+
+    private void generateAndStartMatches(MatchFinderQueue queue) {
+        try {
+            boolean foundMatch;
+            do {
+                Optional<Match> maybeMatch = generateMatchIfPossible(queue);
+                if (maybeMatch.isPresent()) {
+                    /* Join and Leave change the groups while the match was generated from a snapshot of them. The groups
+                    of the match are taken out in one step, and if a player left in between, the queue is looked at
+                    again on the next run. */
+                    List<Group> groupsOfMatch = queue.removeGroupsOfMatch(maybeMatch.get());
+                    if (groupsOfMatch.isEmpty()) {
+                        markQueueDirty(queue);
+                        break;
+                    }
+                    recordQueueToMatchLatency(groupsOfMatch);
+                    for (Player player : dbService.findPlayers(maybeMatch.get().getPlayerIds()))
+                        removePlayerFromAllQueues(queue.getServer(), player);
+                    matchService.startMatch(maybeMatch.get()).subscribe(ExceptionHandler.NO_OP, throwable -> {
+                        exceptionHandler.handleException(throwable, String.format("%s::startMatch on %s:%s:%s",
+                                this.getClass().getSimpleName(), queue.getServer().getGuildId(),
+                                queue.getGame().getName(), queue.getName()));
+                        requeueGroups(queue, groupsOfMatch);
+                    });
+                    foundMatch = true;
+                } else {
+                    foundMatch = false;
+                }
+            } while (foundMatch);
+            if (queue.getMaxRatingSpread() != MatchFinderQueue.NO_LIMIT
+                    && queue.getNumPlayersWaiting() >= queue.getNumPlayersPerMatch()) {
+                queuesWaitingForElasticity.add(QueueKey.of(queue));
+            }
+        } catch (Exception e) {
+            String context = String.format("%s::generateAndStartMatches on %s:%s:%s",
+                    this.getClass().getSimpleName(), bot.getServerIdAndName(queue.getServer()),
+                    queue.getGame().getName(), queue.getName());
+            exceptionHandler.handleException(e, context);
+        }
+    }
+
+    /* The groups of a match that failed to start go back to the queue they were matched from, keeping their place.
+    The queue is not marked dirty, so a start that keeps failing is not tried again every run. */
+    private void requeueGroups(MatchFinderQueue queue, List<Group> groups) {
+        log.warn(String.format("Putting %s groups back into %s:%s:%s after their match failed to start",
+                groups.size(), queue.getServer().getGuildId(), queue.getGame().getName(), queue.getName()));
+        groups.forEach(queue::addGroup);
+        queueRegistry.markUnsaved(queue);
+    }
+
+    private void recordQueueToMatchLatency(List<Group> groupsOfMatch) {
+        long now = System.currentTimeMillis();
+        groupsOfMatch.forEach(group -> queueToMatchTimer.record(now - group.getTimestamp().getTime(), TimeUnit.MILLISECONDS));
+    }
+
+    @PreDestroy
+    public void shutdownMatchmakingExecutor() {
+        matchmakingExecutor.shutdown();
+    }
+
+    public void markQueueDirty(MatchFinderQueue queue) {
+        dirtyQueues.add(QueueKey.of(queue));
     }
 
     public Optional<Match> generateMatchIfPossible(MatchFinderQueue queue) {
         if (queue.getQueueType() == MatchFinderQueue.QueueType.SOLO) return generateMatchFromSoloQueue(queue);
         if (queue.getQueueType() == MatchFinderQueue.QueueType.PREMADE) return generateMatchFromPremadeQueue(queue);
-        return null;
+        return Optional.empty();// mixed queues are not matched yet
     }
 
     public Optional<Match> generateMatchFromSoloQueue(MatchFinderQueue queue) {
-        List<Group> groupsSortedByRating = new LinkedList<>(queue.getGroups().stream().sorted().toList());
+        // groups are kept sorted by rating, see MatchFinderQueue::addGroup
+        List<Group> groupsSortedByRating = new ArrayList<>(queue.getGroups());
+        int numPlayersNeeded = queue.getNumPlayersPerMatch();
+        int numGroups = groupsSortedByRating.size();
+        if (numGroups < numPlayersNeeded) return Optional.empty();
+        if (queue.getMaxRatingSpread() == MatchFinderQueue.NO_LIMIT)
+            return Optional.of(buildMatch(new ArrayList<>(groupsSortedByRating.subList(0, numPlayersNeeded)), queue));
+
         Date now = new Date();
+        double[] lowerBounds = new double[numGroups];
+        double[] upperBounds = new double[numGroups];
+        for (int i = 0; i < numGroups; i++) {
+            Group group = groupsSortedByRating.get(i);
+            double averageRating = group.getAverageRating();
+            double ratingElasticity = group.getRatingElasticity(now, queue);
+            lowerBounds[i] = averageRating - ratingElasticity;
+            upperBounds[i] = averageRating + ratingElasticity;
+        }
+        // slide a window over the sorted groups, keeping the max of the lower bounds and the min of the upper bounds
+        // in monotonic deques of indices
+        Deque<Integer> maxLowerBoundIndices = new ArrayDeque<>();
+        Deque<Integer> minUpperBoundIndices = new ArrayDeque<>();
+        for (int i = 0; i < numGroups; i++) {
+            while (!maxLowerBoundIndices.isEmpty() && lowerBounds[maxLowerBoundIndices.peekLast()] <= lowerBounds[i])
+                maxLowerBoundIndices.pollLast();
+            maxLowerBoundIndices.addLast(i);
+            while (!minUpperBoundIndices.isEmpty() && upperBounds[minUpperBoundIndices.peekLast()] >= upperBounds[i])
+                minUpperBoundIndices.pollLast();
+            minUpperBoundIndices.addLast(i);
 
-        int numPlayersNeeded = queue.getNumPlayersPerMatch();
-        if (groupsSortedByRating.size() < numPlayersNeeded) return Optional.empty();
-        for (int i = 0; i <= groupsSortedByRating.size() - numPlayersNeeded; i++) {// TODO abwechseln von unten und von oben matches suchen
-            List<Group> potentialMatch = groupsSortedByRating.subList(i, i + numPlayersNeeded);
-            if (queue.getMaxRatingSpread() == MatchFinderQueue.NO_LIMIT)
-                return Optional.of(buildMatch(potentialMatch, queue));
-            double potentialHighestRating = potentialMatch.stream()
-                    .mapToDouble(group -> group.getAverageRating() - group.getRatingElasticity(now, queue))
-                    .max().getAsDouble();
-            double potentialLowestRating = potentialMatch.stream()
-                    .mapToDouble(group -> group.getAverageRating() + group.getRatingElasticity(now, queue))
-                    .min().getAsDouble();
+            int windowStart = i - numPlayersNeeded + 1;
+            if (windowStart < 0) continue;
+            if (maxLowerBoundIndices.peekFirst() < windowStart) maxLowerBoundIndices.pollFirst();
+            if (minUpperBoundIndices.peekFirst() < windowStart) minUpperBoundIndices.pollFirst();
+
+            double potentialHighestRating = lowerBounds[maxLowerBoundIndices.peekFirst()];
+            double potentialLowestRating = upperBounds[minUpperBoundIndices.peekFirst()];
             log.trace(String.format("%.1f - %.1f = %.1f <? %s", potentialHighestRating, potentialLowestRating,
                     potentialHighestRating - potentialLowestRating, queue.getMaxRatingSpread()));
             if (potentialHighestRating - potentialLowestRating <= queue.getMaxRatingSpread())
-                return Optional.of(buildMatch(potentialMatch, queue));
+                return Optional.of(buildMatch(new ArrayList<>(groupsSortedByRating.subList(windowStart, i + 1)), queue));
         }
         return Optional.empty();
     }
 
     private Match buildMatch(List<Group> groups, MatchFinderQueue queue) {
-        List<List<Player>> teams = new ArrayList<>();
+        List<List<PlayerReference>> teams = new ArrayList<>();
         for (int i = 0; i < queue.getNumTeams(); i++) {
             teams.add(new ArrayList<>());
         }
@@ -97,11 +238,11 @@ public class QueueScheduler {
                     groups.remove(0);
                     teams.get(j).add(groups.get(groups.size() - 1).getPlayers().get(0));
                     groups.remove(groups.size() - 1);
-                } else {// TODO besser waere der player in der mitte statt random
-                    // take a random player
-                    int randomIndex = ThreadLocalRandom.current().nextInt(0, groups.size());
-                    teams.get(j).add(groups.get(randomIndex).getPlayers().get(0));
-                    groups.remove(randomIndex);
+                } else {
+                    // take the player in the middle, who has the median rating of the players left
+                    int middleIndex = groups.size() / 2;
+                    teams.get(j).add(groups.get(middleIndex).getPlayers().get(0));
+                    groups.remove(middleIndex);
                 }
             }
         }
@@ -109,30 +250,41 @@ public class QueueScheduler {
     }
 
     private Optional<Match> generateMatchFromPremadeQueue(MatchFinderQueue queue) {
-        if (queue.getGroups().size() < queue.getNumTeams()) return Optional.empty();
+        List<Group> groupsInJoinOrder = new ArrayList<>(queue.getGroups());
+        if (groupsInJoinOrder.size() < queue.getNumTeams()) return Optional.empty();
 
-        List<List<Player>> allPlayers = queue.getGroups().stream()
+        // the teams that joined first, see MatchFinderQueue::groupOrder
+        List<List<PlayerReference>> allPlayers = groupsInJoinOrder.subList(0, queue.getNumTeams()).stream()
                 .map(Group::getPlayers)
                 .collect(Collectors.toList());
         return Optional.of(new Match(queue, allPlayers));
     }
 
+    public void addGroupToQueue(MatchFinderQueue queue, Group group) {
+        queue.addGroup(group);
+        queueRegistry.markUnsaved(queue);
+        markQueueDirty(queue);
+    }
+
     public void removePlayerFromAllQueues(Server server, Player player) {
+        queueRegistry.attach(server);
         server.getGames().stream()
                 .flatMap(game -> game.getQueueNameToQueue().values().stream())
-                .forEach(queue -> queue.removeGroupsContainingPlayer(player));
-        dbService.saveServer(server);
+                .filter(queue -> queue.removeGroupsContainingPlayer(player))
+                .forEach(queueRegistry::markUnsaved);
 
         player.setLastJoinedQueueAt(null);
         dbService.savePlayer(player);
     }
 
     public void updatePlayerInAllQueuesOfGame(Game game, Player player) {
-        boolean hasGameChanged = false;
+        queueRegistry.attach(game.getServer());
         for (MatchFinderQueue queue : game.getQueues()) {
             boolean hasQueueChanged = queue.updatePlayerIfPresent(player);
-            if (hasQueueChanged) hasGameChanged = true;
+            if (hasQueueChanged) {
+                queueRegistry.markUnsaved(queue);
+                markQueueDirty(queue);
+            }
         }
-        if (hasGameChanged) dbService.saveServer(game.getServer());
     }
 }
@@ -0,0 +1,165 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.model.Game;
+import com.elorankingbot.model.RankingsEntry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import lombok.extern.apachecommons.CommonsLog;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+/* Keeps the rankings entries of each ranking in memory, ordered by rating descending and then by id, so ranks and
+the entries around a rank are found by binary search and index access. A ranking is read from the rankingsentry
+collection when it is first needed. When more rankings are in memory than rankings-index-max-rankings allows, the
+ones used least recently are dropped.
+DBService keeps the rankings that are in memory up to date on every write to the rankingsentry collection. Loading a
+ranking and applying a write to it hold the same lock, so a write that lands while the ranking is read from the
+database is applied after the load instead of being lost. */
+@CommonsLog
+@Component
+public class RankingsIndex {
+
+	private static final Comparator<RankingsEntry> RANKING_ORDER = Comparator
+			.comparingDouble(RankingsEntry::getRating).reversed()
+			.thenComparing(RankingsEntry::getId);
+
+	private final DBService dbService;
+	private final Cache<RankingKey, Ranking> rankings;
+	private final Striped<Lock> rankingLocks = Striped.lock(64);
+
+	private record RankingKey(long guildId, String gameName) {
+
+		static RankingKey of(Game game) {
+			return new RankingKey(game.getGuildId(), game.getName());
+		}
+	}
+
+	private static class Ranking {
+
+		private final List<RankingsEntry> entries;
+		private final Map<UUID, RankingsEntry> playerIdToEntry = new HashMap<>();
+
+		private Ranking(List<RankingsEntry> entries) {
+			this.entries = new ArrayList<>(entries);
+			this.entries.sort(RANKING_ORDER);
+			this.entries.forEach(entry -> playerIdToEntry.put(entry.getPlayerId(), entry));
+		}
+
+		private synchronized void put(RankingsEntry entry) {
+			remove(entry.getPlayerId());
+			int index = Collections.binarySearch(entries, entry, RANKING_ORDER);
+			entries.add(index < 0 ? -index - 1 : index, entry);
+			playerIdToEntry.put(entry.getPlayerId(), entry);
+		}
+
+		private synchronized void remove(UUID playerId) {
+			RankingsEntry oldEntry = playerIdToEntry.remove(playerId);
+			if (oldEntry == null) return;
+			int index = Collections.binarySearch(entries, oldEntry, RANKING_ORDER);
+			if (index >= 0) entries.remove(index);
+		}
+
+		private synchronized int rankOf(UUID playerId) {
+			RankingsEntry entry = playerIdToEntry.get(playerId);
+			return entry == null ? -1 : Collections.binarySearch(entries, entry, RANKING_ORDER);
+		}
+
+		private synchronized List<RankingsEntry> subList(int fromIndex, int toIndex) {
+			return new ArrayList<>(entries.subList(Math.max(0, fromIndex), Math.min(entries.size(), toIndex)));
+		}
+
+		private synchronized int size() {
+			return entries.size();
+		}
+	}
+
+	public RankingsIndex(Services services) {
+		this.dbService = services.dbService;
+		this.rankings = CacheBuilder.newBuilder()
+				.maximumSize(services.props.getRankingsIndexMaxRankings())
+				.build();
+	}
+
+	private Ranking getRanking(Game game) {
+		RankingKey rankingKey = RankingKey.of(game);
+		Ranking ranking = rankings.getIfPresent(rankingKey);
+		if (ranking != null) return ranking;
+
+		Lock lock = rankingLocks.get(rankingKey);
+		lock.lock();
+		try {
+			ranking = rankings.getIfPresent(rankingKey);
+			if (ranking == null) {
+				ranking = new Ranking(dbService.findAllRankingsEntries(game));
+				rankings.put(rankingKey, ranking);
+			}
+			return ranking;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public List<RankingsEntry> getTopEntries(Game game, int numEntries) {
+		return getRanking(game).subList(0, numEntries);
+	}
+
+	public List<RankingsEntry> getEntries(Game game, int fromIndex, int toIndex) {
+		return getRanking(game).subList(fromIndex, toIndex);
+	}
+
+	// returns -1 if the player is not ranked
+	public int getRankIndex(Game game, UUID playerId) {
+		return getRanking(game).rankOf(playerId);
+	}
+
+	public int getNumEntries(Game game) {
+		return getRanking(game).size();
+	}
+
+	// rankings that are not in memory are read in full from the database when next needed, so they need no update
+	public void put(RankingsEntry entry) {
+		RankingKey rankingKey = new RankingKey(entry.getGuildId(), entry.getGameName());
+		Lock lock = rankingLocks.get(rankingKey);
+		lock.lock();
+		try {
+			Ranking ranking = rankings.getIfPresent(rankingKey);
+			if (ranking != null) ranking.put(entry);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void putAll(Collection<RankingsEntry> entries) {
+		entries.forEach(this::put);
+	}
+
+	public void forgetRanking(Game game) {
+		RankingKey rankingKey = RankingKey.of(game);
+		Lock lock = rankingLocks.get(rankingKey);
+		lock.lock();
+		try {
+			rankings.invalidate(rankingKey);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/* a ranking of the server may be loading while it is forgotten, and is not in the cache yet. taking every stripe
+	waits for such loads to finish, so they cannot put a stale ranking back. the stripes are taken in index order, and
+	everybody else holds only one at a time, so this cannot deadlock */
+	public void forgetServer(long guildId) {
+		List<Lock> locks = new ArrayList<>(rankingLocks.size());
+		for (int i = 0; i < rankingLocks.size(); i++) {
+			locks.add(rankingLocks.getAt(i));
+		}
+		locks.forEach(Lock::lock);
+		try {
+			rankings.asMap().keySet().removeIf(rankingKey -> rankingKey.guildId() == guildId);
+		} finally {
+			locks.forEach(Lock::unlock);
+		}
+	}
+}
@@ -27,6 +27,9 @@ public class Services {
 	public final TimedTaskScheduler timedTaskScheduler;
 	public final TimedTaskService timedTaskService;
 	public final QueueScheduler queueScheduler;
+	public final QueueRegistry queueRegistry;
+	public final RankingsIndex rankingsIndex;
+	public final LeaderboardRefreshScheduler leaderboardRefreshScheduler;
 	public final CommandClassScanner commandClassScanner;
 	public final EventParser eventParser;
 
@@ -35,6 +38,8 @@ public class Services {
 					@Lazy DiscordCommandManager discordCommandManager,
 					@Lazy MatchService matchService, @Lazy GatewayDiscordClient client, @Lazy PatreonClient patreonClient,
 					@Lazy TimedTaskScheduler timedTaskScheduler, @Lazy TimedTaskService timedTaskService, @Lazy QueueScheduler queueScheduler,
+					@Lazy QueueRegistry queueRegistry, @Lazy RankingsIndex rankingsIndex,
+					@Lazy LeaderboardRefreshScheduler leaderboardRefreshScheduler,
 					@Lazy CommandClassScanner commandClassScanner, @Lazy EventParser eventParser, @Lazy ExceptionHandler exceptionHandler) {
 		this.props = props;
 		this.dbService = dbService;
@@ -47,6 +52,9 @@ public class Services {
 		this.timedTaskScheduler = timedTaskScheduler;
 		this.timedTaskService = timedTaskService;
 		this.queueScheduler = queueScheduler;
+		this.queueRegistry = queueRegistry;
+		this.rankingsIndex = rankingsIndex;
+		this.leaderboardRefreshScheduler = leaderboardRefreshScheduler;
 		this.commandClassScanner = commandClassScanner;
 		this.eventParser = eventParser;
 		this.exceptionHandler = exceptionHandler;
@@ -0,0 +1,63 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.model.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/* Collects the writes of one logical operation, like committing a match result, so DBService::write can send them
+as one unordered bulk write per collection instead of one round trip per document. Every document is upserted by
+its id, except players, which are versioned and only replaced if their version is still the one they were read with.
+Writes of the same document are coalesced, the last one is written. Nothing is written before DBService::write is
+called. */
+public class WriteBatch {
+
+	final Map<Class<?>, Map<Object, Object>> classToIdToDocument = new LinkedHashMap<>();
+	final Map<UUID, Player> idToPlayer = new LinkedHashMap<>();
+	final Map<UUID, RankingsEntry> idToRankingsEntry = new LinkedHashMap<>();
+
+	WriteBatch() {
+	}
+
+	public WriteBatch savePlayer(Player player) {
+		idToPlayer.put(player.getId(), player);
+		return this;
+	}
+
+	public WriteBatch savePlayers(List<Player> players) {
+		players.forEach(this::savePlayer);
+		return this;
+	}
+
+	public WriteBatch saveMatchResult(MatchResult matchResult) {
+		return add(MatchResult.class, matchResult.getId(), matchResult);
+	}
+
+	public WriteBatch addToMatchHistory(MatchResult matchResult, List<Player> players) {
+		players.forEach(player -> {
+			MatchHistoryEntry matchHistoryEntry = new MatchHistoryEntry(player, matchResult);
+			add(MatchHistoryEntry.class, matchHistoryEntry.getId(), matchHistoryEntry);
+		});
+		return this;
+	}
+
+	public WriteBatch updateRankingsEntries(Game game, List<Player> players) {
+		players.forEach(player -> {
+			RankingsEntry rankingsEntry = new RankingsEntry(game, player);
+			idToRankingsEntry.put(rankingsEntry.getId(), rankingsEntry);
+			add(RankingsEntry.class, rankingsEntry.getId(), rankingsEntry);
+		});
+		return this;
+	}
+
+	private WriteBatch add(Class<?> documentClass, Object id, Object document) {
+		classToIdToDocument.computeIfAbsent(documentClass, ignored -> new LinkedHashMap<>()).put(id, document);
+		return this;
+	}
+
+	boolean isEmpty() {
+		return classToIdToDocument.isEmpty() && idToPlayer.isEmpty();
+	}
+}
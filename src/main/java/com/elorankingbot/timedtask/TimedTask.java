@@ -1,5 +1,9 @@
 package com.elorankingbot.timedtask;
 
+import com.elorankingbot.model.Player;
+
+import java.util.UUID;
+
 public record TimedTask (
 		TimedTaskType type,
 		int duration,
@@ -18,4 +22,45 @@ public record TimedTask (
 		PLAYER_UNBAN,
 		LEAVE_QUEUES
 	}
+
+	// the match, player or channel the task is about, so pending tasks can be cancelled with it. null if none
+	public String key() {
+		return switch (type) {
+			case MATCH_WARN_MISSING_REPORTS, MATCH_AUTO_RESOLVE -> matchKey((UUID) value);
+			case PLAYER_UNBAN -> playerKey(relationId, otherId);
+			case LEAVE_QUEUES -> playerKey(otherId, relationId);
+			case CHANNEL_DELETE -> channelKey(relationId);
+			default -> null;
+		};
+	}
+
+	// 0 if the task does not tell, like tasks about a message, and tasks that were added before they told
+	public long guildId() {
+		return switch (type) {
+			case PLAYER_UNBAN, MATCH_WARN_MISSING_REPORTS, MATCH_AUTO_RESOLVE -> relationId;
+			case LEAVE_QUEUES, CHANNEL_DELETE -> otherId;
+			default -> 0L;
+		};
+	}
+
+	/* tasks that check again whether they are still due before they change anything, so running one again after a
+	transient error does no harm. auto resolving a match can fail after part of the result was applied */
+	public boolean isRetryable() {
+		return switch (type) {
+			case MATCH_WARN_MISSING_REPORTS, MESSAGE_DELETE, CHANNEL_DELETE, PLAYER_UNBAN, LEAVE_QUEUES -> true;
+			default -> false;
+		};
+	}
+
+	public static String matchKey(UUID matchId) {
+		return "match:" + matchId;
+	}
+
+	public static String playerKey(long guildId, long userId) {
+		return "player:" + Player.generateId(guildId, userId);
+	}
+
+	public static String channelKey(long channelId) {
+		return "channel:" + channelId;
+	}
 }
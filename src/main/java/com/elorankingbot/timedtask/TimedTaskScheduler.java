@@ -3,21 +3,50 @@ package com.elorankingbot.timedtask;
 import com.elorankingbot.commands.timed.AutoResolveMatch;
 import com.elorankingbot.commands.timed.DecayAcceptedChallenge;
 import com.elorankingbot.commands.timed.DecayOpenChallenge;
+import com.elorankingbot.dao.ScheduledTaskDao;
 import com.elorankingbot.dao.TimeSlotDao;
 import com.elorankingbot.dao.TimedTaskQueueCurrentIndexDao;
 import com.elorankingbot.logging.ExceptionHandler;
 import com.elorankingbot.model.CurrentIndex;
+import com.elorankingbot.model.ScheduledTask;
 import com.elorankingbot.model.TimeSlot;
 import com.elorankingbot.service.DBService;
 import com.elorankingbot.service.DiscordBotService;
 import com.elorankingbot.service.Services;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import discord4j.core.object.entity.channel.GuildChannel;
+import discord4j.rest.http.client.ClientException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Getter;
 import lombok.extern.apachecommons.CommonsLog;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
 
+/* Pending timed tasks are held in a TimingWheel and run within a second of their due time. Every task is also a
+document in the scheduledtask collection, which is read into the wheel on startup. Running a task first claims its
+document for a while, and the document is removed once the task is done, see claim. So a task that was cancelled or
+is done is not run again, and a task that was running when the bot went down runs again after the restart.
+Due tasks run on a bounded pool. Tasks of the same guild run one after the other, in the order they became due, so a
+guild with many due tasks does not hold up the others, see laneOf. A task that takes too long stops holding up its lane, but is
+not interrupted. A task that hits a transient Discord error is scheduled again with backoff, if running it twice does
+no harm, see TimedTask::isRetryable.
+currentIndex still counts the minutes for the periodic jobs in tick and for ban durations. It follows the wall clock,
+so after downtime it moves ahead by the minutes that were missed. Tasks that became due while the bot was down are
+run at a limited rate after startup, so a restart does not set off a burst of Discord calls. */
 @CommonsLog
 @Component
 public class TimedTaskScheduler {
@@ -33,10 +62,27 @@ public class TimedTaskScheduler {
     private final ExceptionHandler exceptionHandler;
     private final TimeSlotDao timeSlotDao;
     private final TimedTaskQueueCurrentIndexDao timedTaskQueueCurrentIndexDao;
+    private final ScheduledTaskDao scheduledTaskDao;
+    private final MongoTemplate mongoTemplate;
     private final boolean doRunSchedulers;
+    private final TimingWheel<ScheduledTask> timingWheel = new TimingWheel<>(System.currentTimeMillis());
+    private final Map<UUID, TimingWheel.Entry<ScheduledTask>> scheduledTaskIdToEntry = new ConcurrentHashMap<>();
+    private final Map<String, Set<ScheduledTask>> keyToScheduledTasks = new ConcurrentHashMap<>();
+    private static final long TASK_TIMEOUT_SECONDS = 60;
+    private static final Duration CHANNEL_LOOKUP_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_BACKOFF_SECONDS = 10;
+    private static final long CLAIM_LEASE_SECONDS = 10 * 60;
+    private final ExecutorService timedTaskExecutor;
+    private final Map<Object, CompletableFuture<Void>> laneToLastTask = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private long currentIndexDueAt;
+    private static final int REPLAYED_TASKS_PER_SECOND = 10;
+    private final Queue<ScheduledTask> overdueTasks = new ConcurrentLinkedQueue<>();
 
     public TimedTaskScheduler(Services services,
-                              TimeSlotDao timeSlotDao, TimedTaskQueueCurrentIndexDao timedTaskQueueCurrentIndexDao) {
+                              TimeSlotDao timeSlotDao, TimedTaskQueueCurrentIndexDao timedTaskQueueCurrentIndexDao,
+                              ScheduledTaskDao scheduledTaskDao, MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
         this.services = services;
         this.dbService = services.dbService;
         this.bot = services.bot;
@@ -44,26 +90,281 @@ public class TimedTaskScheduler {
         this.exceptionHandler = services.exceptionHandler;
         this.timeSlotDao = timeSlotDao;
         this.timedTaskQueueCurrentIndexDao = timedTaskQueueCurrentIndexDao;
+        this.scheduledTaskDao = scheduledTaskDao;
+        this.mongoTemplate = mongoTemplate;
+        this.meterRegistry = meterRegistry;
+        this.timedTaskExecutor = Executors.newFixedThreadPool(services.props.getTimedTaskThreads(),
+                new ThreadFactoryBuilder().setNameFormat("timed-task-%d").setDaemon(true).build());
         this.numberOfTimeSlots = services.props.getNumberOfTimeSlots();
         this.doRunSchedulers = services.props.isDoRunSchedulers();
 
-        if (!timedTaskQueueCurrentIndexDao.existsById(1)) {
-            currentIndex = 0;
-        } else {
-            currentIndex = timedTaskQueueCurrentIndexDao.findById(1).get().getValue();
+        long now = System.currentTimeMillis();
+        Optional<CurrentIndex> maybeCurrentIndex = timedTaskQueueCurrentIndexDao.findById(1);
+        currentIndex = maybeCurrentIndex.map(CurrentIndex::getValue).orElse(0);
+        // an index is saved when the one before it has run, and is due a minute later
+        currentIndexDueAt = maybeCurrentIndex.map(CurrentIndex::getSavedAt)
+                .map(savedAt -> savedAt.getTime() + 60 * 1000L)
+                .orElse(now);
+        moveTimeSlotsToScheduledTasks();
+        for (ScheduledTask scheduledTask : scheduledTaskDao.findAll(Sort.by("dueAt"))) {
+            if (scheduledTask.getDueAt().getTime() > now) {
+                addToTimingWheel(scheduledTask);
+            } else {
+                addToKeyIndex(scheduledTask);
+                overdueTasks.add(scheduledTask);
+            }
+        }
+        if (!overdueTasks.isEmpty()) log.info(String.format("Replaying %s overdue timed tasks", overdueTasks.size()));
+        Gauge.builder("elorankingbot.timedtask.overdue", overdueTasks, Queue::size).register(meterRegistry);
+    }
+
+    // timed tasks used to be stored in one document per minute, which is due when currentIndex reaches it
+    private void moveTimeSlotsToScheduledTasks() {
+        List<TimeSlot> timeSlots = timeSlotDao.findAll();
+        if (timeSlots.isEmpty()) return;
+
+        for (TimeSlot timeSlot : timeSlots) {
+            Date dueAt = new Date(currentIndexDueAt + getRemainingDuration(timeSlot.getIndex()) % numberOfTimeSlots * 60 * 1000L);
+            scheduledTaskDao.insert(timeSlot.getTimedTasks().stream()
+                    .map(timedTask -> new ScheduledTask(withUnbanTimeSlot(timedTask, timeSlot.getIndex()), dueAt))
+                    .toList());
+            timeSlotDao.delete(timeSlot);
         }
+        log.info(String.format("Moved the timed tasks of %s time slots to scheduled tasks", timeSlots.size()));
+    }
+
+    /* a legacy unban task has no value, it was checked against the time slot it ran in. that slot is the one the ban
+    ends at, so it is stored with the task, as addTimedTask callers do */
+    private static TimedTask withUnbanTimeSlot(TimedTask timedTask, int timeSlotIndex) {
+        if (timedTask.type() != TimedTask.TimedTaskType.PLAYER_UNBAN || timedTask.value() != null) return timedTask;
+        return new TimedTask(timedTask.type(), timedTask.duration(), timedTask.relationId(), timedTask.otherId(), timeSlotIndex);
+    }
+
+    // returns the id to cancel the task with. see TimedTask::key to cancel all tasks of a match, player or channel
+    public UUID addTimedTask(TimedTask.TimedTaskType type, int duration, long relationId, long otherId, Object value) {
+        ScheduledTask scheduledTask = new ScheduledTask(new TimedTask(type, duration, relationId, otherId, value),
+                new Date(System.currentTimeMillis() + duration * 60 * 1000L));
+        if (!doRunSchedulers) return scheduledTask.getId();
+
+        log.debug(String.format("adding timed task for %s of type %s with timer %s due at %s",
+                relationId, type.name(), duration, scheduledTask.getDueAt()));
+        scheduledTaskDao.insert(scheduledTask);
+        addToTimingWheel(scheduledTask);
+        return scheduledTask.getId();
     }
 
-    public void addTimedTask(TimedTask.TimedTaskType type, int duration, long relationId, long otherId, Object value) {
+    // replaces the pending tasks of the same type for the same match, player or channel
+    public UUID rescheduleTimedTask(TimedTask.TimedTaskType type, int duration, long relationId, long otherId, Object value) {
+        String key = new TimedTask(type, duration, relationId, otherId, value).key();
+        if (key != null) cancelTimedTasks(key, type);
+        return addTimedTask(type, duration, relationId, otherId, value);
+    }
+
+    private void addToTimingWheel(ScheduledTask scheduledTask) {
+        synchronized (timingWheel) {
+            scheduledTaskIdToEntry.put(scheduledTask.getId(), timingWheel.add(scheduledTask, scheduledTask.getDueAt().getTime()));
+        }
+        addToKeyIndex(scheduledTask);
+    }
+
+    private void addToKeyIndex(ScheduledTask scheduledTask) {
+        String key = scheduledTask.getTask().key();
+        if (key != null) keyToScheduledTasks.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(scheduledTask);
+    }
+
+    private void removeFromTimingWheel(ScheduledTask scheduledTask) {
+        TimingWheel.Entry<ScheduledTask> entry = scheduledTaskIdToEntry.remove(scheduledTask.getId());
+        if (entry != null) {
+            synchronized (timingWheel) {
+                timingWheel.cancel(entry);
+            }
+        }
+        String key = scheduledTask.getTask().key();
+        if (key != null) {
+            keyToScheduledTasks.computeIfPresent(key, (k, scheduledTasks) -> {
+                scheduledTasks.remove(scheduledTask);
+                return scheduledTasks.isEmpty() ? null : scheduledTasks;
+            });
+        }
+    }
+
+    public void cancelTimedTask(UUID scheduledTaskId) {
+        TimingWheel.Entry<ScheduledTask> entry = scheduledTaskIdToEntry.get(scheduledTaskId);
+        if (entry != null) removeFromTimingWheel(entry.getValue());
+        scheduledTaskDao.deleteById(scheduledTaskId);
+    }
+
+    // cancels the pending tasks with the key, only those of the given types if any are given
+    public void cancelTimedTasks(String key, TimedTask.TimedTaskType... types) {
+        Set<ScheduledTask> scheduledTasks = keyToScheduledTasks.get(key);
+        if (scheduledTasks == null) return;
+
+        List<TimedTask.TimedTaskType> typesToCancel = List.of(types);
+        List<ScheduledTask> cancelledTasks = scheduledTasks.stream()
+                .filter(scheduledTask -> typesToCancel.isEmpty() || typesToCancel.contains(scheduledTask.getTask().type()))
+                .toList();
+        if (cancelledTasks.isEmpty()) return;
+
+        log.debug(String.format("cancelling %s timed tasks of %s", cancelledTasks.size(), key));
+        cancelledTasks.forEach(this::removeFromTimingWheel);
+        scheduledTaskDao.deleteAllById(cancelledTasks.stream().map(ScheduledTask::getId).toList());
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void runDueTasks() {
         if (!doRunSchedulers) return;
 
-        int targetTimeSlotIndex = (currentIndex + duration) % numberOfTimeSlots;
-        log.debug(String.format("adding timed task for %s of type %s with timer %s to slot %s",
-                relationId, type.name(), duration, targetTimeSlotIndex));
-        Optional<TimeSlot> maybeTimeSlot = timeSlotDao.findById(targetTimeSlotIndex);
-        Set<TimedTask> timedTasks = maybeTimeSlot.isPresent() ? maybeTimeSlot.get().getTimedTasks() : new HashSet<>();
-        timedTasks.add(new TimedTask(type, duration, relationId, otherId, value));
-        timeSlotDao.save(new TimeSlot(targetTimeSlotIndex, timedTasks));
+        List<ScheduledTask> dueTasks;
+        synchronized (timingWheel) {
+            dueTasks = timingWheel.advanceTo(System.currentTimeMillis());
+        }
+        for (int i = 0; i < REPLAYED_TASKS_PER_SECOND && !overdueTasks.isEmpty(); i++) {
+            dueTasks.add(overdueTasks.poll());
+        }
+        for (ScheduledTask scheduledTask : dueTasks) {
+            removeFromTimingWheel(scheduledTask);
+            runInLane(laneOf(scheduledTask), scheduledTask);
+        }
+    }
+
+    // the guild of the task. a task whose guild cannot be found does not wait for any other
+    private Object laneOf(ScheduledTask scheduledTask) {
+        TimedTask task = scheduledTask.getTask();
+        long guildId = task.guildId() != 0L ? task.guildId() : findGuildId(task);
+        return guildId != 0L ? guildId : scheduledTask.getId();
+    }
+
+    // for tasks that were added before their guild was stored with them, and for tasks about a message
+    private long findGuildId(TimedTask task) {
+        try {
+            return switch (task.type()) {
+                case MATCH_WARN_MISSING_REPORTS, MATCH_AUTO_RESOLVE -> dbService.findMatch((UUID) task.value())
+                        .map(match -> match.getServer().getGuildId())
+                        .orElse(0L);
+                case CHANNEL_DELETE -> findGuildIdOfChannel(task.relationId());
+                case MESSAGE_DELETE, MATCH_SUMMARIZE -> findGuildIdOfChannel(task.otherId());
+                default -> 0L;
+            };
+        } catch (Exception e) {
+            log.debug(String.format("Could not find the guild of timed task %s: %s", task.type().name(), e.getMessage()));
+            return 0L;
+        }
+    }
+
+    private long findGuildIdOfChannel(long channelId) {
+        GuildChannel channel = bot.getChannelById(channelId).ofType(GuildChannel.class).block(CHANNEL_LOOKUP_TIMEOUT);
+        return channel == null ? 0L : channel.getGuildId().asLong();
+    }
+
+    private void runInLane(Object lane, ScheduledTask scheduledTask) {
+        CompletableFuture<Void> task = laneToLastTask.compute(lane, (key, lastTask) ->
+                (lastTask == null ? CompletableFuture.<Void>completedFuture(null) : lastTask.exceptionally(throwable -> null))
+                        .thenCompose(ignored -> runWithTimeout(scheduledTask)));
+        task.whenComplete((ignored, throwable) -> laneToLastTask.remove(lane, task));
+    }
+
+    /* the returned future fails TASK_TIMEOUT_SECONDS after the task was handed to the pool, also if it is still waiting
+    for a thread behind tasks that are stuck, so the next task of the lane may start. the late task still runs, and keeps
+    its thread until it is done. interrupting it could leave it half done, or leave the interrupt pending for the next
+    task of the pool thread */
+    private CompletableFuture<Void> runWithTimeout(ScheduledTask scheduledTask) {
+        CompletableFuture<Void> task = new CompletableFuture<Void>().orTimeout(TASK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        timedTaskExecutor.execute(() -> {
+            try {
+                runDueTask(scheduledTask);
+            } finally {
+                task.complete(null);
+            }
+        });
+        return task.whenComplete((ignored, throwable) -> {
+            if (throwable instanceof TimeoutException) {
+                String typeName = scheduledTask.getTask().type().name();
+                log.warn(String.format("Timed task %s has not finished after %ss, starting the next one of its lane",
+                        typeName, TASK_TIMEOUT_SECONDS));
+                Counter.builder("elorankingbot.timedtask.timeout").tag("type", typeName).register(meterRegistry).increment();
+            }
+        });
+    }
+
+    private void runDueTask(ScheduledTask scheduledTask) {
+        TimedTask task = scheduledTask.getTask();
+        String typeName = task.type().name();
+        try {
+            if (!claim(scheduledTask)) return;
+        } catch (Exception e) {
+            // the document is untouched, so the task is tried again
+            log.warn(String.format("Could not claim %s, trying again in %ss: %s", typeName, RETRY_BACKOFF_SECONDS, e));
+            scheduledTask.setDueAt(new Date(System.currentTimeMillis() + RETRY_BACKOFF_SECONDS * 1000));
+            addToTimingWheel(scheduledTask);
+            return;
+        }
+        try {
+            Timer.builder("elorankingbot.timedtask.lag").description("Time from due time to the start of a timed task")
+                    .tag("type", typeName).register(meterRegistry)
+                    .record(System.currentTimeMillis() - scheduledTask.getDueAt().getTime(), TimeUnit.MILLISECONDS);
+            long start = System.nanoTime();
+            processTimedTask(task);
+            Timer.builder("elorankingbot.timedtask.execution").tag("type", typeName).register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            if (task.isRetryable() && isTransient(e) && scheduledTask.getAttempt() + 1 < MAX_ATTEMPTS) {
+                retry(scheduledTask, e);
+                return;
+            }
+            Counter.builder("elorankingbot.timedtask.failed").tag("type", typeName).register(meterRegistry).increment();
+            bot.sendToOwner(String.format("Error in TimedTaskScheduler::runDueTask %s\n%s", typeName, e.getMessage()));
+            log.error(String.format("Timed task %s failed", typeName), e);
+        } finally {
+            scheduledTaskDao.deleteById(scheduledTask.getId());
+        }
+    }
+
+    // rate limits, Discord server errors, timeouts and lost connections
+    private static boolean isTransient(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ClientException clientException) {
+                int status = clientException.getStatus().code();
+                return status == 429 || status >= 500;
+            }
+            if (cause instanceof TimeoutException || cause instanceof IOException || cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void retry(ScheduledTask scheduledTask, Exception e) {
+        int attempt = scheduledTask.getAttempt() + 1;
+        long backoffMillis = RETRY_BACKOFF_SECONDS * 1000 * (1L << (attempt - 1));
+        log.warn(String.format("Retrying %s in %ss after: %s", scheduledTask.getTask().type().name(), backoffMillis / 1000, e));
+        Counter.builder("elorankingbot.timedtask.retry").tag("type", scheduledTask.getTask().type().name())
+                .register(meterRegistry).increment();
+        ScheduledTask retriedTask = new ScheduledTask(scheduledTask.getTask(),
+                new Date(System.currentTimeMillis() + backoffMillis), attempt);
+        scheduledTaskDao.insert(retriedTask);
+        addToTimingWheel(retriedTask);
+    }
+
+    @PreDestroy
+    public void shutdownTimedTaskExecutor() {
+        timedTaskExecutor.shutdown();
+    }
+
+    /* Marks the task as running until the lease runs out. Of two attempts to claim a task, only one succeeds, and a
+    cancelled or finished task has no document left to claim. A task that is claimed elsewhere, like by the instance
+    before a redeploy, is tried again when the lease runs out, in case that instance went down before it was done. */
+    private boolean claim(ScheduledTask scheduledTask) {
+        Date now = new Date();
+        Query unclaimedTask = Query.query(Criteria.where("_id").is(scheduledTask.getId())
+                .orOperator(Criteria.where("claimedUntil").is(null), Criteria.where("claimedUntil").lte(now)));
+        Update lease = new Update().set("claimedUntil", new Date(now.getTime() + CLAIM_LEASE_SECONDS * 1000));
+        if (mongoTemplate.findAndModify(unclaimedTask, lease, ScheduledTask.class) != null) return true;
+
+        scheduledTaskDao.findById(scheduledTask.getId()).ifPresent(claimedTask -> {
+            claimedTask.setDueAt(claimedTask.getClaimedUntil());
+            addToTimingWheel(claimedTask);
+        });
+        return false;
     }
 
     private void processTimedTask(TimedTask task) {
@@ -79,43 +380,40 @@ public class TimedTaskScheduler {
             case MATCH_SUMMARIZE -> timedTaskService.summarizeMatch(id, otherId, task.value());
             case MESSAGE_DELETE -> timedTaskService.deleteMessage(id, otherId);
             case CHANNEL_DELETE -> timedTaskService.deleteChannel(id);
-            case PLAYER_UNBAN -> timedTaskService.unbanPlayer(id, otherId, duration);
+            case PLAYER_UNBAN -> timedTaskService.unbanPlayer(id, otherId, duration, task.value());
             case LEAVE_QUEUES -> timedTaskService.leaveQueues(id, otherId, duration, task.value());
         }
     }
 
-    @Scheduled(fixedRate = 60000)
+    // advances currentIndex by every minute that has passed, and runs each periodic job at most once for them
+    @Scheduled(fixedRate = 5000)
     public void tick() {
         try {
             if (!doRunSchedulers) return;
 
+            long now = System.currentTimeMillis();
+            if (currentIndexDueAt > now) return;
+
+            boolean isGuildCheckDue = false, isBotStatsDue = false;
+            int numMinutes = 0;
+            while (currentIndexDueAt <= now) {
+                if (currentIndex % (7 * 24 * 60) == 0) isGuildCheckDue = true;
+                if (currentIndex % (24 * 60) == 0) isBotStatsDue = true;
+                currentIndex++;
+                if (currentIndex >= numberOfTimeSlots) currentIndex = 0;
+                currentIndexDueAt += 60 * 1000L;
+                numMinutes++;
+            }
             log.debug("tick " + currentIndex);
-            if (currentIndex % (7 * 24 * 60) == 0) {
-                List<Long> allGuildIds = bot.getAllGuildIds();
-                timedTaskService.unmarkServersForDeletionIfAgainPresent(allGuildIds);
-                timedTaskService.deleteServersMarkedForDeletion();
-                timedTaskService.markServersForDeletion(allGuildIds);
+            if (numMinutes > 1) log.info(String.format("Caught up on %s minutes", numMinutes));
+            timedTaskQueueCurrentIndexDao.save(new CurrentIndex(currentIndex, new Date(currentIndexDueAt - 60 * 1000L)));
+
+            if (isGuildCheckDue) {
+                timedTaskService.reconcileGuildPresence();
             }
-            if (currentIndex % (24 * 60) == 0) {
+            if (isBotStatsDue) {
                 dbService.persistBotStatsAndRestartAccumulator();
             }
-
-            Optional<TimeSlot> maybeTimeSlot = timeSlotDao.findById(currentIndex);
-            if (maybeTimeSlot.isPresent()) {
-                for (TimedTask task : maybeTimeSlot.get().getTimedTasks()) {
-                    try {
-                        processTimedTask(task);
-                    } catch (Exception e) {
-                        bot.sendToOwner(String.format("Error in TimedTaskQueue::tick\n%s", e.getMessage()));
-                        e.printStackTrace();
-                    }
-                }
-                timeSlotDao.delete(maybeTimeSlot.get());
-            }
-
-            currentIndex++;
-            if (currentIndex >= numberOfTimeSlots) currentIndex = 0;
-            timedTaskQueueCurrentIndexDao.save(new CurrentIndex(currentIndex));
         } catch (Exception e) {
             exceptionHandler.handleException(e, this.getClass().getSimpleName() + "::tick");
         }
@@ -2,22 +2,20 @@ package com.elorankingbot.timedtask;
 
 import com.elorankingbot.model.Match;
 import com.elorankingbot.model.Player;
+import com.elorankingbot.model.PlayerReference;
 import com.elorankingbot.model.ReportStatus;
-import com.elorankingbot.model.Server;
 import com.elorankingbot.service.DBService;
 import com.elorankingbot.service.DiscordBotService;
 import com.elorankingbot.service.QueueScheduler;
 import com.elorankingbot.service.Services;
+import com.google.common.collect.Sets;
 import discord4j.common.util.Snowflake;
 import discord4j.core.GatewayDiscordClient;
 import discord4j.core.object.entity.channel.TextChannel;
 import lombok.extern.apachecommons.CommonsLog;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
 @Service
 @CommonsLog
@@ -25,7 +23,6 @@ public class TimedTaskService {
 
     private final DBService dbService;
     private final DiscordBotService bot;
-    private final TimedTaskScheduler queue;
     private final GatewayDiscordClient client;
     private final QueueScheduler queueScheduler;
 
@@ -34,41 +31,38 @@ public class TimedTaskService {
     public TimedTaskService(Services services) {
         this.dbService = services.dbService;
         this.bot = services.bot;
-        this.queue = services.timedTaskScheduler;
         this.client = services.client;
         this.queueScheduler = services.queueScheduler;
     }
 
-    void markServersForDeletion(List<Long> allGuildIds) {
-        dbService.findAllServers().stream()
-                .filter(server -> !allGuildIds.contains(server.getGuildId()))
-                .forEach(server -> {
-                    server.setMarkedForDeletion(true);
-                    dbService.saveServer(server);
-                    log.info("marking for deletion: " + server.getGuildId());
-                });
-    }
+    /* Compares id sets instead of loading every server: the guilds the bot is in come from the guildpresence
+    collection, which EventParser keeps up to date, and only the servers whose state changes are touched. A server
+    that is absent is marked first, and deleted on the next run if it is still absent then. */
+    void reconcileGuildPresence() {
+        Set<Long> presentGuildIds = dbService.findPresentGuildIds();
+        if (presentGuildIds.isEmpty()) {
+            // nothing was recorded yet, like right after the collection was introduced
+            presentGuildIds = new HashSet<>(bot.getAllGuildIds());
+            presentGuildIds.forEach(guildId -> dbService.saveGuildPresence(guildId, true));
+        }
+        Set<Long> allServerIds = dbService.findAllServerIds();
+        Set<Long> markedGuildIds = dbService.findServerIdsMarkedForDeletion();
 
-    void unmarkServersForDeletionIfAgainPresent(List<Long> allGuildIds) {
-        dbService.findAllServers().stream()
-                .filter(Server::isMarkedForDeletion)
-                .filter(server -> allGuildIds.contains(server.getGuildId()))
-                .forEach(server -> {
-                    server.setMarkedForDeletion(false);
-                    dbService.saveServer(server);
-                    log.info(String.format("unmarking for deletion %s", server.getGuildId()));
-                });
-    }
+        Set<Long> guildIdsToUnmark = Sets.intersection(markedGuildIds, presentGuildIds).immutableCopy();
+        dbService.saveMarkedForDeletion(guildIdsToUnmark, false);
+        guildIdsToUnmark.forEach(guildId -> log.info(String.format("unmarking for deletion %s", guildId)));
 
-    void deleteServersMarkedForDeletion() {
-        dbService.findAllServers().stream()
-                .filter(Server::isMarkedForDeletion)
-                .forEach(server -> {
-                    String missingAccessMessage = String.format("Missing Access to guild %s. Deleting Server.", server.getGuildId());
+        Sets.difference(markedGuildIds, presentGuildIds).forEach(guildId -> dbService.findServer(guildId)
+                .ifPresent(server -> {
+                    String missingAccessMessage = String.format("Missing Access to guild %s. Deleting Server.", guildId);
                     bot.sendToOwner(missingAccessMessage);
                     log.warn(missingAccessMessage);
                     dbService.deleteServerAndAssociatedData(server);
-                });
+                }));
+
+        Set<Long> guildIdsToMark = Sets.difference(Sets.difference(allServerIds, presentGuildIds), markedGuildIds).immutableCopy();
+        dbService.saveMarkedForDeletion(guildIdsToMark, true);
+        guildIdsToMark.forEach(guildId -> log.info("marking for deletion: " + guildId));
     }
 
     void summarizeMatch(long messageId, long channelId, Object value) {
@@ -101,10 +95,12 @@ public class TimedTaskService {
         }
     }
 
-    void unbanPlayer(long guildId, long userId, int duration) {
+    // unbanAtTimeSlot tells this ban from a later one
+    void unbanPlayer(long guildId, long userId, int duration, Object unbanAtTimeSlot) {
         Player player = dbService.findPlayerByGuildIdAndUserId(guildId, userId).get();
         if (!player.isBanned()) return;
-        if (player.getUnbanAtTimeSlot() != queue.getCurrentIndex()) return;
+        // a ban that was changed since the task was added has its own task
+        if (unbanAtTimeSlot == null ? player.isPermaBanned() : player.getUnbanAtTimeSlot() != (Integer) unbanAtTimeSlot) return;
 
         player.setUnbanAtTimeSlot(-2);
         dbService.savePlayer(player);
@@ -119,7 +115,7 @@ public class TimedTaskService {
 
         Match match = maybeMatch.get();
         StringBuilder mentions = new StringBuilder();
-        for (Player player : match.getPlayers()) {
+        for (PlayerReference player : match.getPlayers()) {
             if (match.getReportStatus(player.getId()).equals(ReportStatus.NOT_YET_REPORTED)) {
                 mentions.append(String.format("<@%s>", player.getUserId()));
             }
@@ -0,0 +1,99 @@
+package com.elorankingbot.timedtask;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/* A hierarchical timing wheel. The lowest wheel has a bucket per second, the ones above it a bucket per minute, per
+hour and per day. A value goes into the lowest wheel that reaches its due time, and moves down a wheel whenever its
+bucket comes around, so adding and cancelling are O(1), and advancing by a second only looks at the buckets whose
+time has come. Not thread safe, TimedTaskScheduler synchronizes on it. */
+class TimingWheel<T> {
+
+    private static final long[] TICK_MILLIS = {1000L, 60 * 1000L, 60 * 60 * 1000L, 24 * 60 * 60 * 1000L};
+    private static final int[] NUM_BUCKETS = {60, 60, 24, 512};
+
+    private final List<List<Set<Entry<T>>>> wheels = new ArrayList<>();
+    private final List<T> dueValues = new ArrayList<>();
+    private long currentTime;// always a full second
+
+    static class Entry<T> {
+
+        private final T value;
+        private final long dueAt;
+        private Set<Entry<T>> bucket;
+
+        private Entry(T value, long dueAt) {
+            this.value = value;
+            this.dueAt = dueAt;
+        }
+
+        T getValue() {
+            return value;
+        }
+    }
+
+    TimingWheel(long startTime) {
+        this.currentTime = startTime - startTime % TICK_MILLIS[0];
+        for (int level = 0; level < TICK_MILLIS.length; level++) {
+            List<Set<Entry<T>>> buckets = new ArrayList<>(NUM_BUCKETS[level]);
+            for (int index = 0; index < NUM_BUCKETS[level]; index++) {
+                buckets.add(new LinkedHashSet<>());
+            }
+            wheels.add(buckets);
+        }
+    }
+
+    // values that are already due are returned by the next call to advanceTo
+    Entry<T> add(T value, long dueAt) {
+        Entry<T> entry = new Entry<>(value, dueAt);
+        place(entry);
+        return entry;
+    }
+
+    // returns false if the entry was already returned as due, or cancelled before
+    boolean cancel(Entry<T> entry) {
+        if (entry.bucket == null) return false;
+
+        entry.bucket.remove(entry);
+        entry.bucket = null;
+        return true;
+    }
+
+    // returns the values that became due up to time, in the order they became due
+    List<T> advanceTo(long time) {
+        while (currentTime + TICK_MILLIS[0] <= time) {
+            currentTime += TICK_MILLIS[0];
+            // higher wheels first, so values moving down from them are seen by the lower wheels in the same second
+            for (int level = TICK_MILLIS.length - 1; level >= 0; level--) {
+                if (currentTime % TICK_MILLIS[level] != 0) continue;
+
+                Set<Entry<T>> bucket = wheels.get(level).get((int) (currentTime / TICK_MILLIS[level] % NUM_BUCKETS[level]));
+                List<Entry<T>> entries = new ArrayList<>(bucket);
+                bucket.clear();
+                entries.forEach(this::place);
+            }
+        }
+        List<T> values = new ArrayList<>(dueValues);
+        dueValues.clear();
+        return values;
+    }
+
+    private void place(Entry<T> entry) {
+        long dueSecond = entry.dueAt + (TICK_MILLIS[0] - 1) - (entry.dueAt + TICK_MILLIS[0] - 1) % TICK_MILLIS[0];
+        if (dueSecond <= currentTime) {
+            entry.bucket = null;
+            dueValues.add(entry.value);
+            return;
+        }
+
+        long delay = dueSecond - currentTime;
+        int level = 0;
+        while (level < TICK_MILLIS.length - 1 && delay >= TICK_MILLIS[level] * NUM_BUCKETS[level]) level++;
+        // a value beyond the reach of the highest wheel comes around early and is placed again
+        Set<Entry<T>> bucket = wheels.get(level).get((int) (dueSecond / TICK_MILLIS[level] % NUM_BUCKETS[level]));
+        bucket.add(entry);
+        entry.bucket = bucket;
+    }
+}
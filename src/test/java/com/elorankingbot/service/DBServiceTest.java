@@ -0,0 +1,130 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.dao.*;
+import com.elorankingbot.model.Server;
+import com.elorankingbot.patreon.PatronDao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// saving copies of a server that were read before another save, see DBService::saveCopy and DocumentCache
+class DBServiceTest {
+
+	private static final long GUILD_ID = 1L;
+
+	private final MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+	private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+	private final ServerDao serverDao = mock(ServerDao.class);
+	private Document storedServer;
+	private DBService dbService;
+
+	@BeforeEach
+	void createDBService() {
+		TestServices services = new TestServices()
+				.bot(mock(DiscordBotService.class))
+				.queueRegistry(mock(QueueRegistry.class));
+		when(services.props().getServerCacheMaxSize()).thenReturn(10);
+		when(mongoTemplate.getConverter()).thenReturn(converter);
+		dbService = new DBService(services.build(), serverDao, mock(MatchResultDao.class),
+				mock(MatchResultReferenceDao.class), mock(MatchHistoryEntryDao.class), mock(PlayerDao.class),
+				mock(MatchDao.class), mock(RankingsEntryDao.class), mock(BotStatsAccumulatorDao.class),
+				mock(BotStatsDao.class), mock(PatronDao.class), mongoTemplate,
+				mock(LeaderboardChangeDetector.class), new SimpleMeterRegistry());
+
+		Server server = new Server(GUILD_ID);
+		server.setAdminRoleId(10L);
+		server.setModRoleId(20L);
+		server.setVersion(3L);
+		store(server);
+		when(serverDao.findById(GUILD_ID)).thenAnswer(invocation -> Optional.of(converter.read(Server.class, copyOfStored())));
+		when(mongoTemplate.findById(eq(GUILD_ID), eq(Document.class), eq("server"))).thenAnswer(invocation -> copyOfStored());
+		// like the versioned save of mongo: the version is raised, and the write fails if the stored one differs
+		when(mongoTemplate.save(any(Server.class))).thenAnswer(invocation -> {
+			Server toSave = invocation.getArgument(0);
+			long readVersion = toSave.getVersion();
+			toSave.setVersion(readVersion + 1);
+			if (readVersion != storedServer.getLong("version")) {
+				throw new OptimisticLockingFailureException("version " + readVersion);
+			}
+			store(toSave);
+			return toSave;
+		});
+	}
+
+	private void store(Server server) {
+		storedServer = new Document();
+		converter.write(server, storedServer);
+	}
+
+	private Document copyOfStored() {
+		Document document = new Document();
+		converter.write(converter.read(Server.class, storedServer), document);
+		return document;
+	}
+
+	private Server stored() {
+		return converter.read(Server.class, storedServer);
+	}
+
+	@Test
+	void mergesChangesOfCopiesReadBeforeTheSameSave() {
+		Server copy = dbService.findServer(GUILD_ID).get();
+		Server otherCopy = dbService.findServer(GUILD_ID).get();
+		copy.setAdminRoleId(11L);
+		dbService.saveServer(copy);
+
+		otherCopy.setModRoleId(21L);
+		dbService.saveServer(otherCopy);
+
+		assertThat(stored().getAdminRoleId()).isEqualTo(11L);
+		assertThat(stored().getModRoleId()).isEqualTo(21L);
+		assertThat(stored().getVersion()).isEqualTo(5L);
+		assertThat(dbService.findServer(GUILD_ID).get().getModRoleId()).isEqualTo(21L);
+	}
+
+	@Test
+	void failsWhenCopiesChangedTheSameValue() {
+		Server copy = dbService.findServer(GUILD_ID).get();
+		Server otherCopy = dbService.findServer(GUILD_ID).get();
+		copy.setAdminRoleId(11L);
+		dbService.saveServer(copy);
+
+		otherCopy.setAdminRoleId(12L);
+
+		assertThatThrownBy(() -> dbService.saveServer(otherCopy)).isInstanceOf(OptimisticLockingFailureException.class);
+		assertThat(stored().getAdminRoleId()).isEqualTo(11L);
+		assertThat(otherCopy.getVersion()).isEqualTo(3L);
+	}
+
+	// the copy keeps the version it was read with, so the second save merges again instead of overwriting
+	@Test
+	void mergesAgainWhenMergedCopyIsSavedAgain() {
+		Server copy = dbService.findServer(GUILD_ID).get();
+		Server otherCopy = dbService.findServer(GUILD_ID).get();
+		copy.setAdminRoleId(11L);
+		dbService.saveServer(copy);
+		otherCopy.setModRoleId(21L);
+		dbService.saveServer(otherCopy);
+
+		otherCopy.setDisputeCategoryId(30L);
+		dbService.saveServer(otherCopy);
+
+		assertThat(stored().getAdminRoleId()).isEqualTo(11L);
+		assertThat(stored().getModRoleId()).isEqualTo(21L);
+		assertThat(stored().getDisputeCategoryId()).isEqualTo(30L);
+	}
+}
@@ -0,0 +1,147 @@
+package com.elorankingbot.service;
+
+import com.google.common.cache.CacheBuilder;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentCacheTest {
+
+	static class Note {
+
+		@Id
+		long id;
+		String text;
+		Long version;
+	}
+
+	private final DocumentCache<Long, Note> noteCache = new DocumentCache<>(CacheBuilder.newBuilder().build(),
+			new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()), Note.class, Set.of());
+
+	private static Note note(String text, long version) {
+		Note note = new Note();
+		note.id = 1L;
+		note.text = text;
+		note.version = version;
+		return note;
+	}
+
+	@Test
+	void handsOutCopies() {
+		noteCache.put(1L, note("first", 3L));
+		noteCache.get(1L).get().text = "changed";
+
+		assertThat(noteCache.get(1L).get().text).isEqualTo("first");
+	}
+
+	@Test
+	void appliesUpdateToTheVersionItWasMadeTo() {
+		noteCache.put(1L, note("first", 3L));
+
+		noteCache.update(1L, 3L, 4L, note -> note.text = "second");
+
+		Note note = noteCache.get(1L).get();
+		assertThat(note.text).isEqualTo("second");
+		assertThat(note.version).isEqualTo(4L);
+	}
+
+	@Test
+	void dropsDocumentThatUpdateWasNotMadeTo() {
+		noteCache.put(1L, note("first", 2L));
+
+		noteCache.update(1L, 3L, 4L, note -> note.text = "second");
+
+		assertThat(noteCache.get(1L)).isEmpty();
+	}
+
+	@Test
+	void mergesWithTheUpdatedDocument() {
+		noteCache.put(1L, note("first", 3L));
+		noteCache.update(1L, 3L, 4L, note -> note.text = "second");
+		Document copy = noteCache.toDocument(note("third", 4L));
+
+		assertThat(noteCache.merge(1L, 4L, copy, noteCache.toDocument(note("second", 5L))))
+				.hasValueSatisfying(note -> {
+					assertThat(note.text).isEqualTo("third");
+					assertThat(note.version).isEqualTo(5L);
+				});
+	}
+
+	private static Document server() {
+		return new Document("_id", 1L)
+				.append("version", 3L)
+				.append("adminRoleId", 10L)
+				.append("modRoleId", 20L)
+				.append("gameNameToGame", new Document("chess", new Document("name", "chess").append("initialRating", 1200)));
+	}
+
+	@Test
+	void appliesChangesOfCopyToOtherFields() {
+		Document copy = server().append("adminRoleId", 11L);
+		Document stored = server().append("modRoleId", 21L).append("version", 4L);
+
+		assertThat(DocumentCache.mergeChanges(server(), copy, stored, Set.of())).isTrue();
+		assertThat(stored.get("adminRoleId")).isEqualTo(11L);
+		assertThat(stored.get("modRoleId")).isEqualTo(21L);
+		assertThat(stored.get("version")).isEqualTo(4L);
+	}
+
+	@Test
+	void mergesNestedDocumentsByField() {
+		Document copy = server();
+		copy.get("gameNameToGame", Document.class).get("chess", Document.class).put("initialRating", 1500);
+		Document stored = server();
+		stored.get("gameNameToGame", Document.class).put("go", new Document("name", "go"));
+
+		assertThat(DocumentCache.mergeChanges(server(), copy, stored, Set.of())).isTrue();
+		Document games = stored.get("gameNameToGame", Document.class);
+		assertThat(games.get("chess", Document.class).get("initialRating")).isEqualTo(1500);
+		assertThat(games.keySet()).containsExactlyInAnyOrder("chess", "go");
+	}
+
+	@Test
+	void removesFieldsTheCopyRemoved() {
+		Document copy = server();
+		copy.get("gameNameToGame", Document.class).remove("chess");
+		Document stored = server().append("modRoleId", 21L);
+
+		assertThat(DocumentCache.mergeChanges(server(), copy, stored, Set.of())).isTrue();
+		assertThat(stored.get("gameNameToGame", Document.class)).isEmpty();
+		assertThat(stored.get("modRoleId")).isEqualTo(21L);
+	}
+
+	@Test
+	void failsWhenBothChangedTheSameValue() {
+		Document copy = server().append("adminRoleId", 11L);
+		Document stored = server().append("adminRoleId", 12L);
+
+		assertThat(DocumentCache.mergeChanges(server(), copy, stored, Set.of())).isFalse();
+	}
+
+	@Test
+	void acceptsTheSameChangeOnBothSides() {
+		Document copy = server().append("adminRoleId", 11L);
+		Document stored = server().append("adminRoleId", 11L);
+
+		assertThat(DocumentCache.mergeChanges(server(), copy, stored, Set.of())).isTrue();
+		assertThat(stored.get("adminRoleId")).isEqualTo(11L);
+	}
+
+	@Test
+	void keepsTheValueOfTheCopyForKeysWhereCopyWins() {
+		Document base = server().append("groups", List.of());
+		Document copy = server().append("groups", List.of("a", "b"));
+		Document stored = server().append("groups", List.of("a"));
+
+		assertThat(DocumentCache.mergeChanges(base, copy, stored, Set.of("groups"))).isTrue();
+		assertThat(stored.get("groups")).isEqualTo(List.of("a", "b"));
+	}
+}
@@ -0,0 +1,103 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.model.Game;
+import com.elorankingbot.model.PlayerMatchResult;
+import com.elorankingbot.model.RankingsEntry;
+import com.elorankingbot.model.RankingsExcerpt;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LeaderboardChangeDetectorTest {
+
+	private final LeaderboardChangeDetector leaderboardChangeDetector = new LeaderboardChangeDetector();
+	private final Game game = mock(Game.class);
+	private final UUID shownPlayerId = UUID.randomUUID();
+
+	@BeforeEach
+	void mockGame() {
+		when(game.getGuildId()).thenReturn(1L);
+		when(game.getName()).thenReturn("chess");
+		when(game.getLeaderboardLength()).thenReturn(2);
+	}
+
+	private void display(RankingsEntry... entries) {
+		leaderboardChangeDetector.recordDisplayed(new RankingsExcerpt(game, List.of(entries), 1, Optional.empty(), 10));
+	}
+
+	private static RankingsEntry entry(UUID playerId, double rating) {
+		return new RankingsEntry(UUID.randomUUID(), 1L, "chess", playerId, rating, "player", 0, 0, 0);
+	}
+
+	private static PlayerMatchResult result(UUID playerId, double newRating) {
+		PlayerMatchResult playerMatchResult = new PlayerMatchResult();
+		playerMatchResult.setPlayerId(playerId);
+		playerMatchResult.setNewRating(newRating);
+		return playerMatchResult;
+	}
+
+	@Test
+	void countsLeaderboardNotShownYetAsChanged() {
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game, UUID.randomUUID(), 0)).isTrue();
+	}
+
+	@Test
+	void countsLeaderboardWithFreeSpotsAsChanged() {
+		display(entry(shownPlayerId, 1200));
+
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game, UUID.randomUUID(), 0)).isTrue();
+	}
+
+	@Test
+	void countsChangeOfShownPlayerAsChanged() {
+		display(entry(shownPlayerId, 1200), entry(UUID.randomUUID(), 1100));
+
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game, shownPlayerId, 900)).isTrue();
+	}
+
+	@Test
+	void countsRatingReachingTheCutoffAsChanged() {
+		display(entry(shownPlayerId, 1200), entry(UUID.randomUUID(), 1100));
+
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game, UUID.randomUUID(), 1100)).isTrue();
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game, UUID.randomUUID(), 1099)).isFalse();
+	}
+
+	@Test
+	void looksAtEveryResultOfMatch() {
+		display(entry(shownPlayerId, 1200), entry(UUID.randomUUID(), 1100));
+
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game,
+				List.of(result(UUID.randomUUID(), 1000), result(UUID.randomUUID(), 1050)))).isFalse();
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game,
+				List.of(result(UUID.randomUUID(), 1000), result(shownPlayerId, 1250)))).isTrue();
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game,
+				List.of(result(UUID.randomUUID(), 1000), result(UUID.randomUUID(), 1150)))).isTrue();
+	}
+
+	@Test
+	void countsForgottenLeaderboardAsChanged() {
+		display(entry(shownPlayerId, 1200), entry(UUID.randomUUID(), 1100));
+		leaderboardChangeDetector.forgetServer(1L);
+
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game, UUID.randomUUID(), 0)).isTrue();
+	}
+
+	@Test
+	void keepsLeaderboardsOfGamesApart() {
+		Game otherGame = mock(Game.class);
+		when(otherGame.getGuildId()).thenReturn(1L);
+		when(otherGame.getName()).thenReturn("go");
+		display(entry(shownPlayerId, 1200), entry(UUID.randomUUID(), 1100));
+
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(otherGame, UUID.randomUUID(), 0)).isTrue();
+		assertThat(leaderboardChangeDetector.hasLeaderboardChanged(game, UUID.randomUUID(), 0)).isFalse();
+	}
+}
@@ -0,0 +1,113 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class QueueRegistryTest {
+
+	private static final long GUILD_ID = 1L;
+
+	private final DBService dbService = mock(DBService.class);
+	private QueueRegistry queueRegistry;
+
+	@BeforeEach
+	void createQueueRegistry() {
+		queueRegistry = new QueueRegistry(new TestServices().dbService(dbService).build());
+	}
+
+	// a fresh copy of the server, as DBService hands one out on every read
+	private static MatchFinderQueue queueOfServerCopy(double... persistedRatings) {
+		Server server = new Server(GUILD_ID);
+		Game game = new Game(server, "chess", false, 0L);
+		server.addGame(game);
+		MatchFinderQueue queue = new MatchFinderQueue(game, "solo", 2, 1, MatchFinderQueue.QueueType.SOLO, 1);
+		game.addQueue(queue);
+		for (double rating : persistedRatings) queue.addGroup(group(game, rating));
+		return queue;
+	}
+
+	private static Group group(Game game, double rating) {
+		Group group = new Group(List.of(), game);
+		group.setPlayers(List.of(new PlayerReference(UUID.randomUUID(), 0L, "player", rating)));
+		return group;
+	}
+
+	private static List<Double> ratingsOf(MatchFinderQueue queue) {
+		return queue.getGroups().stream().map(group -> group.getPlayers().get(0).getRating()).toList();
+	}
+
+	@Test
+	void sharesGroupsBetweenCopiesOfServer() {
+		MatchFinderQueue queue = queueOfServerCopy(), otherCopy = queueOfServerCopy();
+		queueRegistry.attach(queue.getGame().getServer());
+		queueRegistry.attach(otherCopy.getGame().getServer());
+
+		queue.addGroup(group(queue.getGame(), 1000));
+
+		assertThat(ratingsOf(otherCopy)).containsExactly(1000D);
+	}
+
+	@Test
+	void readsPersistedGroupsOnlyOnFirstAttach() {
+		MatchFinderQueue queue = queueOfServerCopy(1200, 1000);
+		queueRegistry.attach(queue.getGame().getServer());
+		MatchFinderQueue laterCopy = queueOfServerCopy(1500);
+		queueRegistry.attach(laterCopy.getGame().getServer());
+
+		assertThat(ratingsOf(laterCopy)).containsExactly(1000D, 1200D);
+	}
+
+	@Test
+	void savesMarkedQueueOnce() {
+		MatchFinderQueue queue = queueOfServerCopy();
+		queueRegistry.attach(queue.getGame().getServer());
+		queueRegistry.markUnsaved(queue);
+		queueRegistry.markUnsaved(queue);
+
+		queueRegistry.saveUnsavedQueues();
+		queueRegistry.saveUnsavedQueues();
+
+		verify(dbService, times(1)).saveQueueGroups(eq(QueueKey.of(queue)), same(queue.getGroups()));
+	}
+
+	@Test
+	void savesQueueAgainAfterSaveFailed() {
+		MatchFinderQueue queue = queueOfServerCopy();
+		queueRegistry.attach(queue.getGame().getServer());
+		queueRegistry.markUnsaved(queue);
+		doThrow(new RuntimeException("timeout")).doNothing().when(dbService).saveQueueGroups(any(), any());
+
+		queueRegistry.saveUnsavedQueues();
+		queueRegistry.saveUnsavedQueues();
+		queueRegistry.saveUnsavedQueues();
+
+		verify(dbService, times(2)).saveQueueGroups(eq(QueueKey.of(queue)), any());
+	}
+
+	@Test
+	void forgetsQueuesMissingFromServer() {
+		MatchFinderQueue queue = queueOfServerCopy();
+		queueRegistry.attach(queue.getGame().getServer());
+		queue.addGroup(group(queue.getGame(), 1000));
+		queueRegistry.markUnsaved(queue);
+
+		Server serverWithoutQueue = new Server(GUILD_ID);
+		serverWithoutQueue.addGame(new Game(serverWithoutQueue, "chess", false, 0L));
+		queueRegistry.forgetQueuesMissingFrom(serverWithoutQueue);
+		queueRegistry.saveUnsavedQueues();
+		MatchFinderQueue recreatedQueue = queueOfServerCopy();
+		queueRegistry.attach(recreatedQueue.getGame().getServer());
+
+		verify(dbService, never()).saveQueueGroups(any(), any());
+		assertThat(recreatedQueue.getGroups()).isEmpty();
+	}
+}
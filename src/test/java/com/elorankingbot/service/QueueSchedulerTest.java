@@ -0,0 +1,143 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.model.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueueSchedulerTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    private QueueScheduler queueScheduler;
+    private final Game game = mock(Game.class);
+
+    @BeforeEach
+    void createQueueScheduler() {
+        TestServices services = new TestServices();
+        when(services.props().getMatchmakingThreads()).thenReturn(1);
+        queueScheduler = new QueueScheduler(services.build(), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void shutdownQueueScheduler() {
+        queueScheduler.shutdownMatchmakingExecutor();
+    }
+
+    private MatchFinderQueue soloQueue(int numTeams, int maxRatingSpread, int ratingElasticity) {
+        MatchFinderQueue queue = new MatchFinderQueue(game, "solo", numTeams, 1, MatchFinderQueue.QueueType.SOLO, 1);
+        queue.setMaxRatingSpread(maxRatingSpread);
+        queue.setRatingElasticity(ratingElasticity);
+        return queue;
+    }
+
+    private void join(MatchFinderQueue queue, double rating, long waitedMillis) {
+        Group group = new Group(List.of(), game);
+        group.setPlayers(List.of(new PlayerReference(UUID.randomUUID(), 0L, "player", rating)));
+        group.setTimestamp(new Date(System.currentTimeMillis() - waitedMillis));
+        queue.addGroup(group);
+    }
+
+    private List<Double> ratingsOfMatch(MatchFinderQueue queue) {
+        Optional<Match> maybeMatch = queueScheduler.generateMatchFromSoloQueue(queue);
+        if (maybeMatch.isEmpty()) return List.of();
+        return maybeMatch.get().getTeams().stream()
+                .flatMap(Collection::stream)
+                .map(PlayerReference::getRating)
+                .sorted()
+                .toList();
+    }
+
+    @Test
+    void matchesLowestRatedPlayersWithoutSpreadLimit() {
+        MatchFinderQueue queue = soloQueue(2, MatchFinderQueue.NO_LIMIT, 0);
+        join(queue, 2000, 0);
+        join(queue, 1000, 0);
+        join(queue, 1500, 0);
+
+        assertThat(ratingsOfMatch(queue)).containsExactly(1000D, 1500D);
+    }
+
+    @Test
+    void doesNotMatchWithTooFewPlayers() {
+        MatchFinderQueue queue = soloQueue(3, MatchFinderQueue.NO_LIMIT, 0);
+        join(queue, 1000, 0);
+        join(queue, 1000, 0);
+
+        assertThat(ratingsOfMatch(queue)).isEmpty();
+    }
+
+    @Test
+    void matchesFirstWindowWithinSpread() {
+        MatchFinderQueue queue = soloQueue(3, 100, 0);
+        for (double rating : List.of(1000D, 1500D, 1550D, 1600D, 2000D)) join(queue, rating, 0);
+
+        assertThat(ratingsOfMatch(queue)).containsExactly(1500D, 1550D, 1600D);
+    }
+
+    @Test
+    void doesNotMatchWindowBeyondSpread() {
+        MatchFinderQueue queue = soloQueue(3, 99, 0);
+        for (double rating : List.of(1000D, 1500D, 1550D, 1600D, 2000D)) join(queue, rating, 0);
+
+        assertThat(ratingsOfMatch(queue)).isEmpty();
+    }
+
+    // the extremes of the first windows have to leave the deques before the last window fits
+    @Test
+    void dropsBoundsThatLeftTheWindow() {
+        MatchFinderQueue queue = soloQueue(3, 20, 0);
+        for (double rating : List.of(1000D, 1010D, 1400D, 1405D, 1410D)) join(queue, rating, 0);
+
+        assertThat(ratingsOfMatch(queue)).containsExactly(1400D, 1405D, 1410D);
+    }
+
+    @Test
+    void widensSpreadWithTimeWaited() {
+        MatchFinderQueue queue = soloQueue(2, 0, 10);
+        join(queue, 1000, 9 * MINUTE);
+        join(queue, 1200, 9 * MINUTE);
+        assertThat(ratingsOfMatch(queue)).isEmpty();
+
+        queue = soloQueue(2, 0, 10);
+        join(queue, 1000, 10 * MINUTE);
+        join(queue, 1200, 10 * MINUTE);
+        assertThat(ratingsOfMatch(queue)).containsExactly(1000D, 1200D);
+    }
+
+    // only the bound of one group in the window has to reach the others
+    @Test
+    void widensSpreadByElasticityOfEachGroup() {
+        MatchFinderQueue queue = soloQueue(2, 0, 10);
+        join(queue, 1000, 20 * MINUTE);
+        join(queue, 1200, 0);
+
+        assertThat(ratingsOfMatch(queue)).containsExactly(1000D, 1200D);
+    }
+
+    @Test
+    void doesNotMatchMixedQueues() {
+        MatchFinderQueue queue = new MatchFinderQueue(game, "mixed", 2, 1, MatchFinderQueue.QueueType.MIXED, 1);
+        join(queue, 1000, 0);
+        join(queue, 1000, 0);
+
+        assertThat(queueScheduler.generateMatchIfPossible(queue)).isEmpty();
+    }
+
+    @Test
+    void givesEachTeamThePlayerInTheMiddleOfThoseLeft() {
+        MatchFinderQueue queue = soloQueue(3, MatchFinderQueue.NO_LIMIT, 0);
+        for (double rating : List.of(1000D, 1100D, 1200D)) join(queue, rating, 0);
+
+        Match match = queueScheduler.generateMatchFromSoloQueue(queue).get();
+
+        assertThat(match.getTeams()).extracting(team -> team.get(0).getRating()).containsExactly(1100D, 1200D, 1000D);
+    }
+}
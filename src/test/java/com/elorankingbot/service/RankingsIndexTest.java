@@ -0,0 +1,136 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.model.Game;
+import com.elorankingbot.model.RankingsEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class RankingsIndexTest {
+
+	private static final long GUILD_ID = 1L;
+
+	private final DBService dbService = mock(DBService.class);
+	private final Game game = mock(Game.class);
+	private RankingsIndex rankingsIndex;
+
+	@BeforeEach
+	void createRankingsIndex() {
+		TestServices services = new TestServices().dbService(dbService);
+		when(services.props().getRankingsIndexMaxRankings()).thenReturn(10);
+		rankingsIndex = new RankingsIndex(services.build());
+		when(game.getGuildId()).thenReturn(GUILD_ID);
+		when(game.getName()).thenReturn("chess");
+	}
+
+	private static RankingsEntry entry(UUID playerId, double rating) {
+		return new RankingsEntry(RankingsEntry.generateId(GUILD_ID, "chess", playerId), GUILD_ID, "chess", playerId,
+				rating, "player", 0, 0, 0);
+	}
+
+	@Test
+	void ranksByRatingDescending() {
+		UUID first = UUID.randomUUID(), second = UUID.randomUUID(), third = UUID.randomUUID();
+		when(dbService.findAllRankingsEntries(game)).thenReturn(List.of(entry(third, 900), entry(first, 1200), entry(second, 1000)));
+
+		assertThat(rankingsIndex.getRankIndex(game, first)).isEqualTo(0);
+		assertThat(rankingsIndex.getRankIndex(game, second)).isEqualTo(1);
+		assertThat(rankingsIndex.getRankIndex(game, third)).isEqualTo(2);
+		assertThat(rankingsIndex.getRankIndex(game, UUID.randomUUID())).isEqualTo(-1);
+		assertThat(rankingsIndex.getNumEntries(game)).isEqualTo(3);
+		verify(dbService, times(1)).findAllRankingsEntries(game);
+	}
+
+	@Test
+	void returnsEntriesAroundRank() {
+		List<RankingsEntry> entries = List.of(entry(UUID.randomUUID(), 1300), entry(UUID.randomUUID(), 1200),
+				entry(UUID.randomUUID(), 1100), entry(UUID.randomUUID(), 1000));
+		when(dbService.findAllRankingsEntries(game)).thenReturn(entries);
+
+		assertThat(rankingsIndex.getTopEntries(game, 2)).containsExactlyElementsOf(entries.subList(0, 2));
+		assertThat(rankingsIndex.getEntries(game, 1, 3)).containsExactlyElementsOf(entries.subList(1, 3));
+		assertThat(rankingsIndex.getEntries(game, -2, 10)).containsExactlyElementsOf(entries);
+	}
+
+	@Test
+	void movesPlayerWhoseRatingChanged() {
+		UUID climber = UUID.randomUUID(), other = UUID.randomUUID();
+		when(dbService.findAllRankingsEntries(game)).thenReturn(List.of(entry(other, 1100), entry(climber, 1000)));
+		assertThat(rankingsIndex.getRankIndex(game, climber)).isEqualTo(1);
+
+		rankingsIndex.put(entry(climber, 1150));
+
+		assertThat(rankingsIndex.getRankIndex(game, climber)).isEqualTo(0);
+		assertThat(rankingsIndex.getRankIndex(game, other)).isEqualTo(1);
+		assertThat(rankingsIndex.getNumEntries(game)).isEqualTo(2);
+	}
+
+	@Test
+	void ordersEqualRatingsById() {
+		UUID playerId = UUID.randomUUID(), otherPlayerId = UUID.randomUUID();
+		RankingsEntry entry = entry(playerId, 1000), otherEntry = entry(otherPlayerId, 1000);
+		when(dbService.findAllRankingsEntries(game)).thenReturn(List.of(entry, otherEntry));
+
+		boolean entryFirst = entry.getId().compareTo(otherEntry.getId()) < 0;
+		assertThat(rankingsIndex.getRankIndex(game, playerId)).isEqualTo(entryFirst ? 0 : 1);
+		assertThat(rankingsIndex.getRankIndex(game, otherPlayerId)).isEqualTo(entryFirst ? 1 : 0);
+	}
+
+	@Test
+	void readsRankingAgainAfterItWasForgotten() {
+		UUID playerId = UUID.randomUUID();
+		when(dbService.findAllRankingsEntries(game)).thenReturn(List.of(entry(playerId, 1000)));
+		rankingsIndex.getNumEntries(game);
+
+		rankingsIndex.forgetRanking(game);
+		when(dbService.findAllRankingsEntries(game)).thenReturn(List.of(entry(playerId, 1000), entry(UUID.randomUUID(), 1100)));
+
+		assertThat(rankingsIndex.getRankIndex(game, playerId)).isEqualTo(1);
+	}
+
+	@Test
+	void readsRankingsOfServerAgainAfterItWasForgotten() {
+		UUID playerId = UUID.randomUUID();
+		when(dbService.findAllRankingsEntries(game)).thenReturn(List.of(entry(playerId, 1000)));
+		rankingsIndex.getNumEntries(game);
+
+		rankingsIndex.forgetServer(GUILD_ID);
+		when(dbService.findAllRankingsEntries(game)).thenReturn(List.of());
+
+		assertThat(rankingsIndex.getRankIndex(game, playerId)).isEqualTo(-1);
+		verify(dbService, times(2)).findAllRankingsEntries(game);
+	}
+
+	// the write is not in what the load read, but must not be lost
+	@Test
+	void appliesWriteMadeWhileRankingIsLoaded() throws InterruptedException {
+		UUID playerId = UUID.randomUUID();
+		CountDownLatch loadStarted = new CountDownLatch(1);
+		when(dbService.findAllRankingsEntries(game)).thenAnswer(invocation -> {
+			loadStarted.countDown();
+			Thread.sleep(100);
+			return List.of(entry(playerId, 1000));
+		});
+		Thread writer = new Thread(() -> {
+			try {
+				loadStarted.await();
+			} catch (InterruptedException e) {
+				return;
+			}
+			rankingsIndex.put(entry(playerId, 1200));
+		});
+		writer.start();
+
+		rankingsIndex.getNumEntries(game);
+		writer.join(TimeUnit.SECONDS.toMillis(5));
+
+		assertThat(rankingsIndex.getTopEntries(game, 1)).extracting(RankingsEntry::getRating).containsExactly(1200D);
+	}
+}
@@ -0,0 +1,46 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.configuration.ApplicationPropertiesLoader;
+import com.elorankingbot.timedtask.TimedTaskService;
+
+import static org.mockito.Mockito.mock;
+
+/* Builds Services for unit tests. Only the collaborators a test hands in are set, everything else is null, so tests
+do not depend on the constructor of Services. props is a mock to stub the settings on. */
+public class TestServices {
+
+	private final ApplicationPropertiesLoader props = mock(ApplicationPropertiesLoader.class);
+	private DBService dbService;
+	private DiscordBotService bot;
+	private TimedTaskService timedTaskService;
+	private QueueRegistry queueRegistry;
+
+	public TestServices dbService(DBService dbService) {
+		this.dbService = dbService;
+		return this;
+	}
+
+	public TestServices bot(DiscordBotService bot) {
+		this.bot = bot;
+		return this;
+	}
+
+	public TestServices timedTaskService(TimedTaskService timedTaskService) {
+		this.timedTaskService = timedTaskService;
+		return this;
+	}
+
+	public TestServices queueRegistry(QueueRegistry queueRegistry) {
+		this.queueRegistry = queueRegistry;
+		return this;
+	}
+
+	public ApplicationPropertiesLoader props() {
+		return props;
+	}
+
+	public Services build() {
+		return new Services(props, dbService, bot, null, null, null, null, null, null, timedTaskService, null,
+				queueRegistry, null, null, null, null, null);
+	}
+}
@@ -0,0 +1,74 @@
+package com.elorankingbot.service;
+
+import com.elorankingbot.model.Game;
+import com.elorankingbot.model.Player;
+import com.elorankingbot.model.RankingsEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WriteBatchTest {
+
+	private final WriteBatch writeBatch = new WriteBatch();
+	private final Game game = mock(Game.class);
+
+	@BeforeEach
+	void mockGame() {
+		when(game.getGuildId()).thenReturn(1L);
+		when(game.getName()).thenReturn("chess");
+		when(game.getInitialRating()).thenReturn(1200);
+	}
+
+	private Player player(long userId, double rating) {
+		Player player = new Player(1L, userId, "player" + userId);
+		player.getOrCreatePlayerGameStats(game).setRating(rating);
+		return player;
+	}
+
+	@Test
+	void isEmptyUntilSomethingIsAdded() {
+		assertThat(writeBatch.isEmpty()).isTrue();
+
+		writeBatch.savePlayer(player(1L, 1200));
+
+		assertThat(writeBatch.isEmpty()).isFalse();
+	}
+
+	@Test
+	void keepsLastWriteOfSamePlayer() {
+		Player earlierCopy = player(1L, 1200);
+		Player laterCopy = player(1L, 1250);
+		Player otherPlayer = player(2L, 1100);
+
+		writeBatch.savePlayer(earlierCopy).savePlayers(List.of(otherPlayer, laterCopy));
+
+		assertThat(writeBatch.idToPlayer.values()).containsExactly(laterCopy, otherPlayer);
+	}
+
+	@Test
+	void keepsLastWriteOfSameRankingsEntry() {
+		Player player = player(1L, 1200);
+		writeBatch.updateRankingsEntries(game, List.of(player, player(2L, 1100)));
+		player.getOrCreatePlayerGameStats(game).setRating(1300);
+		writeBatch.updateRankingsEntries(game, List.of(player));
+
+		assertThat(writeBatch.idToRankingsEntry.values()).extracting(RankingsEntry::getRating).containsExactly(1300D, 1100D);
+		assertThat(writeBatch.classToIdToDocument.get(RankingsEntry.class).values())
+				.containsExactlyElementsOf(writeBatch.idToRankingsEntry.values());
+	}
+
+	@Test
+	void groupsWritesByDocumentClass() {
+		writeBatch.savePlayer(player(1L, 1200))
+				.updateRankingsEntries(game, List.of(player(1L, 1200), player(2L, 1100)));
+
+		assertThat(writeBatch.classToIdToDocument.keySet()).containsExactly(RankingsEntry.class);
+		assertThat(writeBatch.classToIdToDocument.get(RankingsEntry.class)).hasSize(2);
+		assertThat(writeBatch.idToPlayer).hasSize(1);
+	}
+}
@@ -0,0 +1,135 @@
+package com.elorankingbot.timedtask;
+
+import com.elorankingbot.dao.ScheduledTaskDao;
+import com.elorankingbot.dao.TimeSlotDao;
+import com.elorankingbot.dao.TimedTaskQueueCurrentIndexDao;
+import com.elorankingbot.model.ScheduledTask;
+import com.elorankingbot.service.DiscordBotService;
+import com.elorankingbot.service.TestServices;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TimedTaskSchedulerTest {
+
+    private final TimedTaskService timedTaskService = mock(TimedTaskService.class);
+    private final DiscordBotService bot = mock(DiscordBotService.class);
+    private final ScheduledTaskDao scheduledTaskDao = mock(ScheduledTaskDao.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private TimedTaskScheduler timedTaskScheduler;
+
+    @BeforeEach
+    void claimEveryTask() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), eq(ScheduledTask.class)))
+                .thenAnswer(invocation -> new ScheduledTask());
+    }
+
+    @AfterEach
+    void shutdownTimedTaskScheduler() {
+        if (timedTaskScheduler != null) timedTaskScheduler.shutdownTimedTaskExecutor();
+    }
+
+    // the tasks were due while the bot was down, so they are replayed on the first runs
+    private void createTimedTaskScheduler(List<ScheduledTask> overdueTasks) {
+        TestServices services = new TestServices().bot(bot).timedTaskService(timedTaskService);
+        when(services.props().getTimedTaskThreads()).thenReturn(2);
+        when(services.props().getNumberOfTimeSlots()).thenReturn(7 * 24 * 60);
+        when(services.props().isDoRunSchedulers()).thenReturn(true);
+        when(scheduledTaskDao.findAll(any(Sort.class))).thenReturn(overdueTasks);
+        timedTaskScheduler = new TimedTaskScheduler(services.build(), mock(TimeSlotDao.class),
+                mock(TimedTaskQueueCurrentIndexDao.class), scheduledTaskDao, mongoTemplate, new SimpleMeterRegistry());
+    }
+
+    private static ScheduledTask overdueUnban(long guildId, long userId) {
+        return new ScheduledTask(new TimedTask(TimedTask.TimedTaskType.PLAYER_UNBAN, 0, guildId, userId, null),
+                new Date(System.currentTimeMillis() - 1000));
+    }
+
+    @Test
+    void replaysOverdueTasksAtLimitedRate() {
+        List<ScheduledTask> overdueTasks = new ArrayList<>();
+        for (long guildId = 1; guildId <= 15; guildId++) overdueTasks.add(overdueUnban(guildId, 1L));
+        createTimedTaskScheduler(overdueTasks);
+
+        timedTaskScheduler.runDueTasks();
+        verify(timedTaskService, after(300).times(10)).unbanPlayer(anyLong(), anyLong(), anyInt(), any());
+
+        timedTaskScheduler.runDueTasks();
+        verify(timedTaskService, timeout(1000).times(15)).unbanPlayer(anyLong(), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void runsTasksOfSameGuildOneAfterTheOther() throws InterruptedException {
+        CountDownLatch firstTaskMayEnd = new CountDownLatch(1);
+        doAnswer(invocation -> firstTaskMayEnd.await(5, TimeUnit.SECONDS))
+                .when(timedTaskService).unbanPlayer(eq(1L), eq(1L), anyInt(), any());
+        createTimedTaskScheduler(List.of(overdueUnban(1L, 1L), overdueUnban(1L, 2L), overdueUnban(2L, 3L)));
+
+        timedTaskScheduler.runDueTasks();
+
+        verify(timedTaskService, timeout(1000)).unbanPlayer(eq(2L), eq(3L), anyInt(), any());
+        verify(timedTaskService, after(200).never()).unbanPlayer(eq(1L), eq(2L), anyInt(), any());
+        firstTaskMayEnd.countDown();
+        verify(timedTaskService, timeout(1000)).unbanPlayer(eq(1L), eq(2L), anyInt(), any());
+    }
+
+    @Test
+    void retriesTransientFailureWithBackoff() {
+        doThrow(new RuntimeException(new IOException("connection reset")))
+                .when(timedTaskService).unbanPlayer(anyLong(), anyLong(), anyInt(), any());
+        ScheduledTask failingTask = overdueUnban(1L, 1L);
+        createTimedTaskScheduler(List.of(failingTask));
+
+        long now = System.currentTimeMillis();
+        timedTaskScheduler.runDueTasks();
+
+        ArgumentCaptor<ScheduledTask> retriedTask = ArgumentCaptor.forClass(ScheduledTask.class);
+        verify(scheduledTaskDao, timeout(1000)).insert(retriedTask.capture());
+        verify(scheduledTaskDao, timeout(1000)).deleteById(failingTask.getId());
+        assertThat(retriedTask.getValue().getAttempt()).isEqualTo(1);
+        assertThat(retriedTask.getValue().getDueAt().getTime()).isGreaterThan(now + 5000);
+        verify(bot, never()).sendToOwner(anyString());
+    }
+
+    @Test
+    void reportsPermanentFailureWithoutRetry() {
+        doThrow(new IllegalStateException("no such player"))
+                .when(timedTaskService).unbanPlayer(anyLong(), anyLong(), anyInt(), any());
+        ScheduledTask failingTask = overdueUnban(1L, 1L);
+        createTimedTaskScheduler(List.of(failingTask));
+
+        timedTaskScheduler.runDueTasks();
+
+        verify(bot, timeout(1000)).sendToOwner(anyString());
+        verify(scheduledTaskDao, timeout(1000)).deleteById(failingTask.getId());
+        verify(scheduledTaskDao, never()).insert(any(ScheduledTask.class));
+    }
+
+    // the task was cancelled, or has run elsewhere, so its document is gone
+    @Test
+    void skipsTaskThatCannotBeClaimed() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), eq(ScheduledTask.class))).thenReturn(null);
+        createTimedTaskScheduler(List.of(overdueUnban(1L, 1L)));
+
+        timedTaskScheduler.runDueTasks();
+
+        verify(timedTaskService, after(300).never()).unbanPlayer(anyLong(), anyLong(), anyInt(), any());
+    }
+}
@@ -0,0 +1,60 @@
+package com.elorankingbot.timedtask;
+
+import com.elorankingbot.model.Server;
+import com.elorankingbot.service.DBService;
+import com.elorankingbot.service.DiscordBotService;
+import com.elorankingbot.service.TestServices;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TimedTaskServiceTest {
+
+    private final DBService dbService = mock(DBService.class);
+    private final DiscordBotService bot = mock(DiscordBotService.class);
+    private TimedTaskService timedTaskService;
+
+    @BeforeEach
+    void createTimedTaskService() {
+        timedTaskService = new TimedTaskService(new TestServices().dbService(dbService).bot(bot).build());
+    }
+
+    @Test
+    void marksAbsentServersAndDeletesThoseMarkedBefore() {
+        Server goneServer = new Server(4L);
+        when(dbService.findPresentGuildIds()).thenReturn(Set.of(1L, 2L));
+        when(dbService.findAllServerIds()).thenReturn(Set.of(1L, 2L, 3L, 4L));
+        when(dbService.findServerIdsMarkedForDeletion()).thenReturn(Set.of(2L, 4L));
+        when(dbService.findServer(4L)).thenReturn(Optional.of(goneServer));
+
+        timedTaskService.reconcileGuildPresence();
+
+        verify(dbService).saveMarkedForDeletion(Set.of(2L), false);
+        verify(dbService).saveMarkedForDeletion(Set.of(3L), true);
+        verify(dbService).deleteServerAndAssociatedData(goneServer);
+        verify(dbService, times(1)).findServer(anyLong());
+        verify(bot, never()).getAllGuildIds();
+    }
+
+    // without any recorded presence every server would look absent, so the guilds are asked for once
+    @Test
+    void recordsPresenceFromGuildsWhenNoneWasRecorded() {
+        when(dbService.findPresentGuildIds()).thenReturn(Set.of());
+        when(bot.getAllGuildIds()).thenReturn(List.of(1L, 2L));
+        when(dbService.findAllServerIds()).thenReturn(Set.of(1L, 2L, 3L));
+        when(dbService.findServerIdsMarkedForDeletion()).thenReturn(Set.of());
+
+        timedTaskService.reconcileGuildPresence();
+
+        verify(dbService).saveGuildPresence(1L, true);
+        verify(dbService).saveGuildPresence(2L, true);
+        verify(dbService).saveMarkedForDeletion(Set.of(3L), true);
+        verify(dbService, never()).deleteServerAndAssociatedData(any());
+    }
+}
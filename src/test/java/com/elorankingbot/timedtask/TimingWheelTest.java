@@ -0,0 +1,111 @@
+package com.elorankingbot.timedtask;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long SECOND = 1000L;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private final TimingWheel<String> timingWheel = new TimingWheel<>(START);
+
+    @Test
+    void returnsValueInTheSecondItIsDue() {
+        timingWheel.add("a", START + 5 * SECOND);
+
+        assertThat(timingWheel.advanceTo(START + 4 * SECOND)).isEmpty();
+        assertThat(timingWheel.advanceTo(START + 5 * SECOND)).containsExactly("a");
+        assertThat(timingWheel.advanceTo(START + 6 * SECOND)).isEmpty();
+    }
+
+    @Test
+    void roundsDueTimeUpToFullSecond() {
+        timingWheel.add("a", START + 1500);
+
+        assertThat(timingWheel.advanceTo(START + 1999)).isEmpty();
+        assertThat(timingWheel.advanceTo(START + 2 * SECOND)).containsExactly("a");
+    }
+
+    @Test
+    void returnsValueThatIsAlreadyDueOnNextAdvance() {
+        timingWheel.advanceTo(START + 10 * SECOND);
+        timingWheel.add("a", START + 3 * SECOND);
+
+        assertThat(timingWheel.advanceTo(START + 10 * SECOND)).containsExactly("a");
+    }
+
+    @Test
+    void cascadesValuesDownToTheirSecond() {
+        List<Long> delays = List.of(59 * SECOND, 60 * SECOND, 90 * SECOND, 59 * MINUTE + 59 * SECOND, HOUR,
+                3 * HOUR + 7 * MINUTE + 11 * SECOND, 23 * HOUR + 59 * MINUTE, DAY, 3 * DAY + 5 * HOUR + 17 * SECOND);
+        for (long delay : delays) {
+            TimingWheel<Long> timingWheel = new TimingWheel<>(START + 30 * SECOND);
+            timingWheel.add(delay, START + 30 * SECOND + delay);
+
+            assertThat(timingWheel.advanceTo(START + 30 * SECOND + delay - SECOND)).as("delay %s", delay).isEmpty();
+            assertThat(timingWheel.advanceTo(START + 30 * SECOND + delay)).as("delay %s", delay).containsExactly(delay);
+        }
+    }
+
+    @Test
+    void placesValuesBeyondTheHighestWheelAgain() {
+        long dueAt = START + 600 * DAY + 5 * SECOND;
+        timingWheel.add("a", dueAt);
+
+        assertThat(timingWheel.advanceTo(dueAt - SECOND)).isEmpty();
+        assertThat(timingWheel.advanceTo(dueAt)).containsExactly("a");
+    }
+
+    @Test
+    void returnsValuesInTheOrderTheyBecameDue() {
+        timingWheel.add("three hours", START + 3 * HOUR);
+        timingWheel.add("one minute", START + 61 * SECOND);
+        timingWheel.add("five seconds", START + 5 * SECOND);
+        timingWheel.add("five seconds too", START + 5 * SECOND);
+
+        assertThat(timingWheel.advanceTo(START + 4 * HOUR))
+                .containsExactly("five seconds", "five seconds too", "one minute", "three hours");
+    }
+
+    @Test
+    void doesNotReturnCancelledValues() {
+        TimingWheel.Entry<String> cancelled = timingWheel.add("cancelled", START + 2 * HOUR);
+        timingWheel.add("kept", START + 2 * HOUR);
+
+        assertThat(timingWheel.cancel(cancelled)).isTrue();
+        assertThat(timingWheel.cancel(cancelled)).isFalse();
+        assertThat(timingWheel.advanceTo(START + 2 * HOUR)).containsExactly("kept");
+    }
+
+    @Test
+    void cannotCancelValueThatWasReturned() {
+        TimingWheel.Entry<String> entry = timingWheel.add("a", START + 90 * SECOND);
+        timingWheel.advanceTo(START + 90 * SECOND);
+
+        assertThat(timingWheel.cancel(entry)).isFalse();
+    }
+
+    @Test
+    void returnsEveryValueOnce() {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            timingWheel.add("value " + i, START + i * 37 * SECOND);
+            expected.add("value " + i);
+        }
+        List<String> returned = new ArrayList<>();
+        for (long time = START; time <= START + 500 * 37 * SECOND; time += 13 * SECOND) {
+            returned.addAll(timingWheel.advanceTo(time));
+        }
+        returned.addAll(timingWheel.advanceTo(START + 500 * 37 * SECOND));
+
+        assertThat(returned).containsExactlyElementsOf(expected);
+    }
+}